@@ -21,10 +21,16 @@
 
 package net.jextra.fauxjo;
 
+import java.io.*;
+import java.lang.ref.*;
 import java.lang.reflect.*;
+import java.nio.channels.*;
 import java.sql.Array;
 import java.sql.*;
+import java.time.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.*;
 import net.jextra.fauxjo.bean.*;
 import net.jextra.fauxjo.beandef.*;
 import net.jextra.fauxjo.coercer.*;
@@ -45,7 +51,18 @@ public class BeanBuilder<T> implements ResultSetIterator.Builder<T>
     // Key = Lowercase column name (in code known as the "key").
     // Value = Information about the bean property.
     private Map<String, FieldDef> fieldDefs;
+    // Key = Lowercase column name.
+    // Value = Converter of the column values to the bean property class.
+    private Map<String, ConverterSlot> converters;
+    // Key = Lowercase column name.
+    // Value = Dictionary that canonicalizes the String values of the column.
+    private Map<String, StringDictionary> dictionaries;
+    // Key = Lowercase column name.
+    // Value = Codec of a Lazy property.
+    private Map<String, LazyCodec<?>> lazyCodecs;
     private boolean autoCloseResultSet;
+    // How to read the columns of the last ResultSet seen. Replaced as a whole when a different ResultSet is read.
+    private volatile ReadPlan readPlan;
 
     // ============================================================
     // Constructors
@@ -56,6 +73,9 @@ public class BeanBuilder<T> implements ResultSetIterator.Builder<T>
         this.beanClass = beanClass;
         this.autoCloseResultSet = autoCloseResultSet;
         coercer = new Coercer();
+        converters = new ConcurrentHashMap<>();
+        dictionaries = new ConcurrentHashMap<>();
+        lazyCodecs = new ConcurrentHashMap<>();
     }
 
     public BeanBuilder( Class<T> beanClass )
@@ -91,6 +111,43 @@ public class BeanBuilder<T> implements ResultSetIterator.Builder<T>
         this.autoCloseResultSet = autoCloseResultSet;
     }
 
+    /**
+     * Canonicalizes the String values of the given low cardinality columns so that beans with the same value share one String instance.
+     */
+    public void useStringDictionary( String... columnNames )
+    {
+        for ( String columnName : columnNames )
+        {
+            useStringDictionary( columnName, StringDictionary.DEFAULT_MAX_SIZE );
+        }
+    }
+
+    /**
+     * @param maxSize number of distinct values kept, values beyond that are not canonicalized.
+     */
+    public void useStringDictionary( String columnName, int maxSize )
+    {
+        dictionaries.put( columnName.toLowerCase(), new StringDictionary( maxSize ) );
+    }
+
+    public void removeStringDictionary( String columnName )
+    {
+        dictionaries.remove( columnName.toLowerCase() );
+    }
+
+    public StringDictionary getStringDictionary( String columnName )
+    {
+        return dictionaries.get( columnName.toLowerCase() );
+    }
+
+    /**
+     * Replaces the default codec of a {@link Lazy} property (which coerces the raw value to the type argument of the property).
+     */
+    public void setLazyCodec( String columnName, LazyCodec<?> codec )
+    {
+        lazyCodecs.put( columnName.toLowerCase(), codec );
+    }
+
     public T getFirst( ResultSet rs )
         throws SQLException
     {
@@ -129,22 +186,58 @@ public class BeanBuilder<T> implements ResultSetIterator.Builder<T>
             rs.close();
         }
 
-        if ( beans.isEmpty() )
+        return pickFirst( beans, errorIfEmpty, errorIfMoreThanOne );
+    }
+
+    public T getFirst( PreparedStatement statement )
+        throws SQLException
+    {
+        return getFirst( statement, false, false );
+    }
+
+    public T getUnique( PreparedStatement statement )
+        throws SQLException
+    {
+        return getFirst( statement, false, true );
+    }
+
+    /**
+     * Executes the query and reads its first row like {@link #getFirst(ResultSet, boolean, boolean)}, but tells the driver (max rows and fetch
+     * size) that only one row (two to check uniqueness) is wanted so that the database does not send the rest. The previous max rows and
+     * fetch size of the statement are restored afterwards.
+     */
+    public T getFirst( PreparedStatement statement, boolean errorIfEmpty, boolean errorIfMoreThanOne )
+        throws SQLException
+    {
+        ArrayList<T> beans = new ArrayList<>();
+        try
         {
-            if ( errorIfEmpty )
+            int rowLimit = errorIfMoreThanOne ? 2 : 1;
+            int maxRows = statement.getMaxRows();
+            int fetchSize = statement.getFetchSize();
+            statement.setMaxRows( rowLimit );
+            statement.setFetchSize( rowLimit );
+
+            try ( ResultSet rs = statement.executeQuery() )
             {
-                throw new FauxjoException( "ResultSet is improperly empty." );
+                buildBeans( beans, rs, 2 );
+            }
+            finally
+            {
+                // Restored before closing, a closed statement can not be changed anymore.
+                statement.setMaxRows( maxRows );
+                statement.setFetchSize( fetchSize );
             }
-
-            return null;
         }
-
-        if ( errorIfMoreThanOne && beans.size() != 1 )
+        finally
         {
-            throw new FauxjoException( "ResultSet improperly contained more than one item." );
+            if ( autoCloseResultSet )
+            {
+                statement.close();
+            }
         }
 
-        return beans.get( 0 );
+        return pickFirst( beans, errorIfEmpty, errorIfMoreThanOne );
     }
 
     /**
@@ -173,6 +266,27 @@ public class BeanBuilder<T> implements ResultSetIterator.Builder<T>
         return result;
     }
 
+    /**
+     * Like {@link #getList(ResultSet)} for the ResultSet of a partial projection (see {@link Table#buildSelectStatement}). Bean properties
+     * without a column in the ResultSet are left unset instead of failing.
+     */
+    public List<T> getPartialList( ResultSet rs )
+        throws SQLException
+    {
+        ArrayList<T> result = new ArrayList<>();
+        while ( rs.next() )
+        {
+            result.add( buildBean( rs, false, true ) );
+        }
+        if ( autoCloseResultSet )
+        {
+            rs.getStatement().close();
+            rs.close();
+        }
+
+        return result;
+    }
+
     /**
      * WARNING: This classes the passed in ResultSet.
      */
@@ -202,6 +316,32 @@ public class BeanBuilder<T> implements ResultSetIterator.Builder<T>
         return new ResultSetIterator<>( rs, this );
     }
 
+    /**
+     * @return stream of the beans of the ResultSet. Closing the stream (or reading it to the end) closes the ResultSet and its statement.
+     * Parallel streams get the beans in batches of {@link ResultSetSpliterator#DEFAULT_BATCH_SIZE}.
+     */
+    public Stream<T> stream( ResultSet rs )
+    {
+        return stream( rs, ResultSetSpliterator.DEFAULT_BATCH_SIZE );
+    }
+
+    public Stream<T> stream( ResultSet rs, int batchSize )
+    {
+        ResultSetSpliterator<T> spliterator = new ResultSetSpliterator<>( rs, this, batchSize );
+
+        return StreamSupport.stream( spliterator, false ).onClose( () ->
+        {
+            try
+            {
+                spliterator.close();
+            }
+            catch ( SQLException ex )
+            {
+                throw new UncheckedSQLException( ex );
+            }
+        } );
+    }
+
     public void buildBeans( Collection<T> beans, ResultSet rs )
         throws SQLException
     {
@@ -221,32 +361,44 @@ public class BeanBuilder<T> implements ResultSetIterator.Builder<T>
 
     public T buildBean( ResultSet rs )
         throws SQLException
+    {
+        return buildBean( rs, false );
+    }
+
+    /**
+     * Like {@link #buildBean(ResultSet)} but InputStream, Reader and ReadableByteChannel properties read straight from the current row
+     * instead of from a copy in memory. They are only valid until the ResultSet moves to the next row.
+     */
+    @Override
+    public T buildStreamingBean( ResultSet rs )
+        throws SQLException
+    {
+        return buildBean( rs, true );
+    }
+
+    protected T buildBean( ResultSet rs, boolean streaming )
+        throws SQLException
+    {
+        return buildBean( rs, streaming, false );
+    }
+
+    /**
+     * @param partial true if the ResultSet only has some of the columns of the bean (a partial projection), missing columns are then allowed.
+     */
+    protected T buildBean( ResultSet rs, boolean streaming, boolean partial )
+        throws SQLException
     {
         try
         {
-            ResultSetMetaData meta = rs.getMetaData();
-            int columnCount = meta.getColumnCount();
+            ReadPlan plan = getReadPlan( rs, streaming );
 
             Map<String, Object> record = new HashMap<>();
-            for ( int i = 1; i <= columnCount; i++ )
+            for ( int i = 0; i < plan.keys.length; i++ )
             {
-                if ( meta.getColumnType( i ) == java.sql.Types.ARRAY )
-                {
-                    Array array = rs.getArray( i );
-                    Object actualArray = null;
-                    if ( array != null )
-                    {
-                        actualArray = array.getArray();
-                    }
-                    record.put( meta.getColumnName( i ).toLowerCase(), actualArray );
-                }
-                else
-                {
-                    record.put( meta.getColumnName( i ).toLowerCase(), rs.getObject( i ) );
-                }
+                record.put( plan.keys[i], plan.readers[i].read( rs, i + 1 ) );
             }
 
-            return buildBean( record );
+            return partial ? buildBean( record, true ) : buildBean( record );
         }
         catch ( Exception ex )
         {
@@ -265,6 +417,12 @@ public class BeanBuilder<T> implements ResultSetIterator.Builder<T>
 
     protected T buildBean( Map<String, Object> record )
         throws SQLException
+    {
+        return buildBean( record, allowMissingColumns );
+    }
+
+    protected T buildBean( Map<String, Object> record, boolean allowMissingColumns )
+        throws SQLException
     {
         T bean;
 
@@ -277,25 +435,38 @@ public class BeanBuilder<T> implements ResultSetIterator.Builder<T>
             throw new FauxjoException( ex );
         }
 
-        Map<String, FieldDef> fieldDefs = new HashMap<>( getFieldDefs() );
-        for ( String key : record.keySet() )
+        Map<String, FieldDef> fieldDefs = getFieldDefs();
+        // Count the columns used in order to check later that all were used.
+        int usedCount = 0;
+        for ( Map.Entry<String, Object> entry : record.entrySet() )
         {
+            String key = entry.getKey();
             FieldDef fieldDef = fieldDefs.get( key );
 
-            // Remove key from fieldDefs in order to take inventory to check later that all were used.
-            fieldDefs.remove( key );
-
             // If column in database but not in bean, assumed OK, ignore.
             if ( fieldDef != null )
             {
-                Object value = record.get( key );
+                usedCount++;
+                Object value = entry.getValue();
 
                 try
                 {
-                    if ( value != null )
+                    if ( fieldDef.getValueClass() == Lazy.class )
+                    {
+                        // Keep the raw value, it is decoded when first used.
+                        value = value == null ? null : new Lazy<>( value, getLazyCodec( key, fieldDef ) );
+                    }
+                    else
                     {
-                        Class<?> targetClass = fieldDef.getValueClass();
-                        value = coercer.convertTo( value, targetClass );
+                        value = getConverter( key, fieldDef ).convert( value );
+                    }
+                    if ( value instanceof String && !dictionaries.isEmpty() )
+                    {
+                        StringDictionary dictionary = dictionaries.get( key );
+                        if ( dictionary != null )
+                        {
+                            value = dictionary.canonicalize( (String) value );
+                        }
                     }
                 }
                 catch ( FauxjoException ex )
@@ -308,10 +479,19 @@ public class BeanBuilder<T> implements ResultSetIterator.Builder<T>
         }
 
         // If any of the columns was not accounted for, throw an Exception
-        if ( !allowMissingColumns && !fieldDefs.isEmpty() )
+        if ( !allowMissingColumns && usedCount < fieldDefs.size() )
         {
-            throw new FauxjoException(
-                "Missing column [" + fieldDefs.keySet().iterator().next() + "] in ResultSet for fauxjo [" + beanClass.getCanonicalName() + "]" );
+            String missingKey = null;
+            for ( String key : fieldDefs.keySet() )
+            {
+                if ( !record.containsKey( key ) )
+                {
+                    missingKey = key;
+                    break;
+                }
+            }
+
+            throw new FauxjoException( "Missing column [" + missingKey + "] in ResultSet for fauxjo [" + beanClass.getCanonicalName() + "]" );
         }
 
         return bean;
@@ -352,6 +532,185 @@ public class BeanBuilder<T> implements ResultSetIterator.Builder<T>
         }
     }
 
+    /**
+     * Picks how to read each column of the given ResultSet once instead of for every row. Values of java.time fields are read directly with
+     * getObject(int, Class) if the driver supports it, avoiding the Timestamp/Date intermediates.
+     */
+    protected ReadPlan getReadPlan( ResultSet rs, boolean streaming )
+        throws SQLException
+    {
+        ReadPlan current = readPlan;
+        if ( current != null && current.resultSet.get() == rs && current.streaming == streaming )
+        {
+            return current;
+        }
+
+        Statement statement = rs.getStatement();
+        DriverFeatures features = statement == null ? DriverFeatures.NONE : DriverFeatures.get( statement.getConnection() );
+
+        ResultSetMetaData meta = rs.getMetaData();
+        int columnCount = meta.getColumnCount();
+        String[] keys = new String[columnCount];
+        ColumnReader[] readers = new ColumnReader[columnCount];
+        for ( int i = 1; i <= columnCount; i++ )
+        {
+            keys[i - 1] = meta.getColumnName( i ).toLowerCase();
+            FieldDef fieldDef = getFieldDefs().get( keys[i - 1] );
+            int sqlType = meta.getColumnType( i );
+            String typeName = meta.getColumnTypeName( i );
+            if ( BindCodecs.isTimestampWithTimeZone( sqlType, typeName ) )
+            {
+                sqlType = java.sql.Types.TIMESTAMP_WITH_TIMEZONE;
+            }
+            readers[i - 1] = getColumnReader( sqlType, fieldDef == null ? null : fieldDef.getValueClass(), features, streaming );
+        }
+
+        current = new ReadPlan( rs, streaming, keys, readers );
+        readPlan = current;
+
+        return current;
+    }
+
+    protected ColumnReader getColumnReader( int sqlType, Class<?> fieldClass, DriverFeatures features, boolean streaming )
+    {
+        if ( fieldClass == InputStream.class || fieldClass == ReadableByteChannel.class )
+        {
+            boolean channel = fieldClass == ReadableByteChannel.class;
+
+            return ( rs, i ) ->
+            {
+                InputStream in;
+                if ( streaming )
+                {
+                    in = rs.getBinaryStream( i );
+                }
+                else
+                {
+                    // Not iterating, the row is gone by the time the bean is used so copy the value.
+                    byte[] bytes = rs.getBytes( i );
+                    in = bytes == null ? null : new ByteArrayInputStream( bytes );
+                }
+
+                return in == null || !channel ? in : Channels.newChannel( in );
+            };
+        }
+        else if ( fieldClass == Reader.class )
+        {
+            return ( rs, i ) ->
+            {
+                if ( streaming )
+                {
+                    return rs.getCharacterStream( i );
+                }
+
+                String string = rs.getString( i );
+
+                return string == null ? null : new StringReader( string );
+            };
+        }
+
+        if ( sqlType == java.sql.Types.ARRAY )
+        {
+            return ( rs, i ) ->
+            {
+                Array array = rs.getArray( i );
+
+                return array == null ? null : array.getArray();
+            };
+        }
+
+        if ( fieldClass == UUID.class && ( sqlType == java.sql.Types.BINARY || sqlType == java.sql.Types.VARBINARY ) )
+        {
+            // BINARY(16) UUID, rebuilt from its bytes without going through a String.
+            return ( rs, i ) ->
+            {
+                byte[] bytes = rs.getBytes( i );
+
+                return bytes == null ? null : UuidCoercer.fromBytes( bytes );
+            };
+        }
+
+        if ( features.supportsJavaTime() && fieldClass != null )
+        {
+            if ( sqlType == java.sql.Types.TIMESTAMP )
+            {
+                if ( fieldClass == LocalDateTime.class )
+                {
+                    return ( rs, i ) -> rs.getObject( i, LocalDateTime.class );
+                }
+                else if ( fieldClass == Instant.class )
+                {
+                    // Same instant Timestamp.toInstant would give, the wall clock time is taken to be in the default time zone.
+                    return ( rs, i ) ->
+                    {
+                        LocalDateTime value = rs.getObject( i, LocalDateTime.class );
+
+                        return value == null ? null : value.atZone( ZoneId.systemDefault() ).toInstant();
+                    };
+                }
+            }
+            else if ( sqlType == java.sql.Types.TIMESTAMP_WITH_TIMEZONE )
+            {
+                if ( fieldClass == OffsetDateTime.class )
+                {
+                    return ( rs, i ) -> rs.getObject( i, OffsetDateTime.class );
+                }
+                else if ( fieldClass == Instant.class )
+                {
+                    return ( rs, i ) ->
+                    {
+                        OffsetDateTime value = rs.getObject( i, OffsetDateTime.class );
+
+                        return value == null ? null : value.toInstant();
+                    };
+                }
+            }
+            else if ( sqlType == java.sql.Types.DATE && fieldClass == LocalDate.class )
+            {
+                return ( rs, i ) -> rs.getObject( i, LocalDate.class );
+            }
+        }
+
+        return ResultSet::getObject;
+    }
+
+    protected LazyCodec<?> getLazyCodec( String key, FieldDef fieldDef )
+    {
+        LazyCodec<?> codec = lazyCodecs.get( key );
+        if ( codec == null )
+        {
+            Class<?> targetClass = Object.class;
+            Type type = fieldDef.getValueType();
+            if ( type instanceof ParameterizedType )
+            {
+                Type arg = ( (ParameterizedType) type ).getActualTypeArguments()[0];
+                if ( arg instanceof Class )
+                {
+                    targetClass = (Class<?>) arg;
+                }
+                else if ( arg instanceof ParameterizedType )
+                {
+                    targetClass = (Class<?>) ( (ParameterizedType) arg ).getRawType();
+                }
+            }
+            Class<?> lazyClass = targetClass;
+            codec = lazyCodecs.computeIfAbsent( key, k -> LazyCodec.coercing( lazyClass, coercer ) );
+        }
+
+        return codec;
+    }
+
+    protected ConverterSlot getConverter( String key, FieldDef fieldDef )
+    {
+        ConverterSlot converter = converters.get( key );
+        if ( converter == null )
+        {
+            converter = converters.computeIfAbsent( key, k -> new ConverterSlot( coercer, fieldDef.getValueClass() ) );
+        }
+
+        return converter;
+    }
+
     protected Map<String, FieldDef> getFieldDefs()
         throws FauxjoException
     {
@@ -362,4 +721,59 @@ public class BeanBuilder<T> implements ResultSetIterator.Builder<T>
 
         return fieldDefs;
     }
+
+    // ----------
+    // private
+    // ----------
+
+    private T pickFirst( List<T> beans, boolean errorIfEmpty, boolean errorIfMoreThanOne )
+        throws FauxjoException
+    {
+        if ( beans.isEmpty() )
+        {
+            if ( errorIfEmpty )
+            {
+                throw new FauxjoException( "ResultSet is improperly empty." );
+            }
+
+            return null;
+        }
+
+        if ( errorIfMoreThanOne && beans.size() != 1 )
+        {
+            throw new FauxjoException( "ResultSet improperly contained more than one item." );
+        }
+
+        return beans.get( 0 );
+    }
+
+    // ============================================================
+    // Inner Classes
+    // ============================================================
+
+    /**
+     * Reads the value of one column of the current row.
+     */
+    protected interface ColumnReader
+    {
+        Object read( ResultSet rs, int columnIndex )
+            throws SQLException;
+    }
+
+    protected static class ReadPlan
+    {
+        // Weak so that the last ResultSet (and its statement) is not kept alive by the builder.
+        private WeakReference<ResultSet> resultSet;
+        private boolean streaming;
+        private String[] keys;
+        private ColumnReader[] readers;
+
+        public ReadPlan( ResultSet resultSet, boolean streaming, String[] keys, ColumnReader[] readers )
+        {
+            this.resultSet = new WeakReference<>( resultSet );
+            this.streaming = streaming;
+            this.keys = keys;
+            this.readers = readers;
+        }
+    }
 }
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) jextra.net.
+ *
+ * This file is part of the jextra.net software.
+ *
+ * The jextra software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * The jextra software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with the jextra software; if not, write to the Free
+ * Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA
+ * 02111-1307 USA.
+ */
+
+package net.jextra.fauxjo;
+
+import java.sql.*;
+
+/**
+ * Binds the values of one column to a PreparedStatement parameter. Chosen once per column (see {@link BindCodecs}) so that binding a value is a
+ * direct call to the typed setter of the statement.
+ */
+public interface BindCodec
+{
+    // ============================================================
+    // Methods
+    // ============================================================
+
+    // ----------
+    // public
+    // ----------
+
+    /**
+     * @param value value read from the bean, not yet converted. May be null.
+     */
+    void bind( PreparedStatement statement, int paramIndex, Object value )
+        throws SQLException;
+}
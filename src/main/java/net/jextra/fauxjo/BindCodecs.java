@@ -0,0 +1,521 @@
+/*
+ * Copyright (C) jextra.net.
+ *
+ * This file is part of the jextra.net software.
+ *
+ * The jextra software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * The jextra software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with the jextra software; if not, write to the Free
+ * Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA
+ * 02111-1307 USA.
+ */
+
+package net.jextra.fauxjo;
+
+import java.io.*;
+import java.math.*;
+import java.nio.channels.*;
+import java.sql.*;
+import java.time.*;
+import java.util.*;
+import net.jextra.fauxjo.coercer.*;
+
+/**
+ * Picks the {@link BindCodec} of a column from its JDBC type and the class of the bean field.
+ */
+public class BindCodecs
+{
+    // ============================================================
+    // Methods
+    // ============================================================
+
+    // ----------
+    // public
+    // ----------
+
+    public static BindCodec forColumn( int sqlType, Class<?> fieldClass, Coercer coercer )
+    {
+        return forColumn( sqlType, fieldClass, coercer, DriverFeatures.NONE );
+    }
+
+    /**
+     * @param fieldClass class of the bean field or getter, or null if unknown.
+     * @param features features of the driver the statements are bound on.
+     */
+    public static BindCodec forColumn( int sqlType, Class<?> fieldClass, Coercer coercer, DriverFeatures features )
+    {
+        return forColumn( sqlType, null, fieldClass, coercer, features );
+    }
+
+    /**
+     * @param typeName database specific type name of the column, or null if unknown.
+     * @param fieldClass class of the bean field or getter, or null if unknown.
+     * @param features features of the driver the statements are bound on.
+     */
+    public static BindCodec forColumn( int sqlType, String typeName, Class<?> fieldClass, Coercer coercer, DriverFeatures features )
+    {
+        if ( features.supportsJavaTime() && fieldClass != null )
+        {
+            if ( isTimestampWithTimeZone( sqlType, typeName ) && ( fieldClass == Instant.class || fieldClass == OffsetDateTime.class ) )
+            {
+                // Nulls are bound with the type the driver reported.
+                return new OffsetDateTimeCodec( Types.TIMESTAMP_WITH_TIMEZONE, new ObjectCodec( sqlType, coercer ) );
+            }
+            else if ( sqlType == Types.TIMESTAMP && fieldClass == LocalDateTime.class )
+            {
+                return new LocalDateTimeCodec( sqlType, new TimestampCodec( sqlType, coercer ) );
+            }
+            else if ( sqlType == Types.DATE && fieldClass == LocalDate.class )
+            {
+                return new LocalDateCodec( sqlType, new ObjectCodec( sqlType, coercer ) );
+            }
+        }
+
+        if ( fieldClass == InputStream.class || fieldClass == ReadableByteChannel.class || fieldClass == Reader.class )
+        {
+            return new StreamCodec( sqlType );
+        }
+
+        if ( fieldClass == UUID.class )
+        {
+            if ( ( sqlType == Types.OTHER || sqlType == Types.JAVA_OBJECT ) && features.supportsNativeUuid() )
+            {
+                return new NativeUuidCodec( sqlType, coercer );
+            }
+            else if ( sqlType == Types.BINARY || sqlType == Types.VARBINARY )
+            {
+                return new UuidBytesCodec( sqlType, coercer );
+            }
+        }
+
+        switch ( sqlType )
+        {
+            case Types.BIGINT:
+                return new LongCodec( sqlType, coercer );
+
+            case Types.INTEGER:
+                return new IntCodec( sqlType, coercer );
+
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                return new BigDecimalCodec( sqlType, coercer );
+
+            case Types.DOUBLE:
+                return new DoubleCodec( sqlType, coercer );
+
+            case Types.BOOLEAN:
+            case Types.BIT:
+                return new BooleanCodec( sqlType, coercer );
+
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+            case Types.LONGNVARCHAR:
+                return new StringCodec( sqlType, coercer );
+
+            case Types.TIMESTAMP:
+                return new TimestampCodec( sqlType, coercer );
+
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+                if ( fieldClass == byte[].class )
+                {
+                    return new BytesCodec( sqlType );
+                }
+                break;
+        }
+
+        return new ObjectCodec( sqlType, coercer );
+    }
+
+    /**
+     * @return true if the column holds timestamps with time zone. Some drivers (e.g. PostgreSQL) report those columns as plain TIMESTAMP,
+     * only their type name (e.g. timestamptz) tells.
+     */
+    public static boolean isTimestampWithTimeZone( int sqlType, String typeName )
+    {
+        if ( sqlType == Types.TIMESTAMP_WITH_TIMEZONE )
+        {
+            return true;
+        }
+
+        return sqlType == Types.TIMESTAMP && typeName != null && typeName.toLowerCase().matches( ".*(tz|zone).*" );
+    }
+
+    // ============================================================
+    // Inner Classes
+    // ============================================================
+
+    /**
+     * Converts to the Java class of the SQL type (see {@link SqlTypeMapping}) and binds with setObject. Used for all types without a more
+     * specific codec.
+     */
+    public static class ObjectCodec implements BindCodec
+    {
+        private int sqlType;
+        private ConverterSlot converter;
+
+        public ObjectCodec( int sqlType, Coercer coercer )
+        {
+            this.sqlType = sqlType;
+            converter = new ConverterSlot( coercer, SqlTypeMapping.getJavaClass( sqlType ) );
+        }
+
+        @Override
+        public void bind( PreparedStatement statement, int paramIndex, Object value )
+            throws SQLException
+        {
+            if ( value == null )
+            {
+                statement.setNull( paramIndex, sqlType );
+            }
+            else
+            {
+                statement.setObject( paramIndex, converter.convert( value ), sqlType );
+            }
+        }
+    }
+
+    /**
+     * Base of the codecs that convert to one class and bind with a typed setter.
+     */
+    private static abstract class TypedCodec implements BindCodec
+    {
+        private int sqlType;
+        private ConverterSlot converter;
+
+        public TypedCodec( int sqlType, Class<?> targetClass, Coercer coercer )
+        {
+            this.sqlType = sqlType;
+            converter = new ConverterSlot( coercer, targetClass );
+        }
+
+        @Override
+        public void bind( PreparedStatement statement, int paramIndex, Object value )
+            throws SQLException
+        {
+            if ( value == null )
+            {
+                statement.setNull( paramIndex, sqlType );
+            }
+            else
+            {
+                Object converted = converter.convert( value );
+                if ( converter.getTargetClass().isInstance( converted ) )
+                {
+                    bindConverted( statement, paramIndex, converted );
+                }
+                else
+                {
+                    // No coercion to the target class, leave it to the driver.
+                    statement.setObject( paramIndex, converted, sqlType );
+                }
+            }
+        }
+
+        protected abstract void bindConverted( PreparedStatement statement, int paramIndex, Object value )
+            throws SQLException;
+    }
+
+    private static class LongCodec extends TypedCodec
+    {
+        public LongCodec( int sqlType, Coercer coercer )
+        {
+            super( sqlType, Long.class, coercer );
+        }
+
+        @Override
+        protected void bindConverted( PreparedStatement statement, int paramIndex, Object value )
+            throws SQLException
+        {
+            statement.setLong( paramIndex, (Long) value );
+        }
+    }
+
+    private static class IntCodec extends TypedCodec
+    {
+        public IntCodec( int sqlType, Coercer coercer )
+        {
+            super( sqlType, Integer.class, coercer );
+        }
+
+        @Override
+        protected void bindConverted( PreparedStatement statement, int paramIndex, Object value )
+            throws SQLException
+        {
+            statement.setInt( paramIndex, (Integer) value );
+        }
+    }
+
+    private static class BigDecimalCodec extends TypedCodec
+    {
+        public BigDecimalCodec( int sqlType, Coercer coercer )
+        {
+            super( sqlType, BigDecimal.class, coercer );
+        }
+
+        @Override
+        protected void bindConverted( PreparedStatement statement, int paramIndex, Object value )
+            throws SQLException
+        {
+            statement.setBigDecimal( paramIndex, (BigDecimal) value );
+        }
+    }
+
+    private static class DoubleCodec extends TypedCodec
+    {
+        public DoubleCodec( int sqlType, Coercer coercer )
+        {
+            super( sqlType, Double.class, coercer );
+        }
+
+        @Override
+        protected void bindConverted( PreparedStatement statement, int paramIndex, Object value )
+            throws SQLException
+        {
+            statement.setDouble( paramIndex, (Double) value );
+        }
+    }
+
+    private static class BooleanCodec extends TypedCodec
+    {
+        public BooleanCodec( int sqlType, Coercer coercer )
+        {
+            super( sqlType, Boolean.class, coercer );
+        }
+
+        @Override
+        protected void bindConverted( PreparedStatement statement, int paramIndex, Object value )
+            throws SQLException
+        {
+            statement.setBoolean( paramIndex, (Boolean) value );
+        }
+    }
+
+    private static class StringCodec extends TypedCodec
+    {
+        public StringCodec( int sqlType, Coercer coercer )
+        {
+            super( sqlType, String.class, coercer );
+        }
+
+        @Override
+        protected void bindConverted( PreparedStatement statement, int paramIndex, Object value )
+            throws SQLException
+        {
+            statement.setString( paramIndex, (String) value );
+        }
+    }
+
+    private static class TimestampCodec extends TypedCodec
+    {
+        public TimestampCodec( int sqlType, Coercer coercer )
+        {
+            super( sqlType, Timestamp.class, coercer );
+        }
+
+        @Override
+        protected void bindConverted( PreparedStatement statement, int paramIndex, Object value )
+            throws SQLException
+        {
+            statement.setTimestamp( paramIndex, (Timestamp) value );
+        }
+    }
+
+    /**
+     * Binds LocalDateTime values of a TIMESTAMP column as they are. Instants keep the Timestamp path so that their meaning does not depend
+     * on how the driver maps a zone-less value.
+     */
+    private static class LocalDateTimeCodec implements BindCodec
+    {
+        private int sqlType;
+        private BindCodec fallback;
+
+        public LocalDateTimeCodec( int sqlType, BindCodec fallback )
+        {
+            this.sqlType = sqlType;
+            this.fallback = fallback;
+        }
+
+        @Override
+        public void bind( PreparedStatement statement, int paramIndex, Object value )
+            throws SQLException
+        {
+            if ( value instanceof LocalDateTime )
+            {
+                statement.setObject( paramIndex, value, sqlType );
+            }
+            else
+            {
+                fallback.bind( statement, paramIndex, value );
+            }
+        }
+    }
+
+    /**
+     * Binds Instant and OffsetDateTime values of a TIMESTAMP WITH TIME ZONE column as OffsetDateTime (UTC for Instants).
+     */
+    private static class OffsetDateTimeCodec implements BindCodec
+    {
+        private int sqlType;
+        private BindCodec fallback;
+
+        public OffsetDateTimeCodec( int sqlType, BindCodec fallback )
+        {
+            this.sqlType = sqlType;
+            this.fallback = fallback;
+        }
+
+        @Override
+        public void bind( PreparedStatement statement, int paramIndex, Object value )
+            throws SQLException
+        {
+            if ( value instanceof OffsetDateTime )
+            {
+                statement.setObject( paramIndex, value, sqlType );
+            }
+            else if ( value instanceof Instant )
+            {
+                statement.setObject( paramIndex, ( (Instant) value ).atOffset( ZoneOffset.UTC ), sqlType );
+            }
+            else
+            {
+                fallback.bind( statement, paramIndex, value );
+            }
+        }
+    }
+
+    private static class LocalDateCodec implements BindCodec
+    {
+        private int sqlType;
+        private BindCodec fallback;
+
+        public LocalDateCodec( int sqlType, BindCodec fallback )
+        {
+            this.sqlType = sqlType;
+            this.fallback = fallback;
+        }
+
+        @Override
+        public void bind( PreparedStatement statement, int paramIndex, Object value )
+            throws SQLException
+        {
+            if ( value instanceof LocalDate )
+            {
+                statement.setObject( paramIndex, value, sqlType );
+            }
+            else
+            {
+                fallback.bind( statement, paramIndex, value );
+            }
+        }
+    }
+
+    /**
+     * Binds UUIDs as they are, for drivers with a native UUID type.
+     */
+    private static class NativeUuidCodec extends TypedCodec
+    {
+        public NativeUuidCodec( int sqlType, Coercer coercer )
+        {
+            super( sqlType, UUID.class, coercer );
+        }
+
+        @Override
+        protected void bindConverted( PreparedStatement statement, int paramIndex, Object value )
+            throws SQLException
+        {
+            statement.setObject( paramIndex, value );
+        }
+    }
+
+    /**
+     * Binds UUIDs as their 16 bytes, for BINARY(16) columns.
+     */
+    private static class UuidBytesCodec extends TypedCodec
+    {
+        public UuidBytesCodec( int sqlType, Coercer coercer )
+        {
+            super( sqlType, UUID.class, coercer );
+        }
+
+        @Override
+        protected void bindConverted( PreparedStatement statement, int paramIndex, Object value )
+            throws SQLException
+        {
+            statement.setBytes( paramIndex, UuidCoercer.toBytes( (UUID) value ) );
+        }
+    }
+
+    /**
+     * Binds InputStream, ReadableByteChannel and Reader values with setBinaryStream/setCharacterStream so that large values are sent without
+     * being loaded into memory.
+     */
+    private static class StreamCodec implements BindCodec
+    {
+        private int sqlType;
+
+        public StreamCodec( int sqlType )
+        {
+            this.sqlType = sqlType;
+        }
+
+        @Override
+        public void bind( PreparedStatement statement, int paramIndex, Object value )
+            throws SQLException
+        {
+            if ( value == null )
+            {
+                statement.setNull( paramIndex, sqlType );
+            }
+            else if ( value instanceof Reader )
+            {
+                statement.setCharacterStream( paramIndex, (Reader) value );
+            }
+            else if ( value instanceof ReadableByteChannel )
+            {
+                statement.setBinaryStream( paramIndex, Channels.newInputStream( (ReadableByteChannel) value ) );
+            }
+            else
+            {
+                statement.setBinaryStream( paramIndex, (InputStream) value );
+            }
+        }
+    }
+
+    private static class BytesCodec implements BindCodec
+    {
+        private int sqlType;
+
+        public BytesCodec( int sqlType )
+        {
+            this.sqlType = sqlType;
+        }
+
+        @Override
+        public void bind( PreparedStatement statement, int paramIndex, Object value )
+            throws SQLException
+        {
+            if ( value == null )
+            {
+                statement.setNull( paramIndex, sqlType );
+            }
+            else
+            {
+                statement.setBytes( paramIndex, (byte[]) value );
+            }
+        }
+    }
+}
@@ -0,0 +1,407 @@
+/*
+ * Copyright (C) jextra.net.
+ *
+ * This file is part of the jextra.net software.
+ *
+ * The jextra software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * The jextra software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with the jextra software; if not, write to the Free
+ * Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA
+ * 02111-1307 USA.
+ */
+
+package net.jextra.fauxjo;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Process-wide cache of table column meta data shared by all {@link Table} instances.
+ * <p>
+ * Entries are keyed by database identity (the JDBC URL of the connection), schema name and table name. Reading the column meta data is
+ * really slow, so no matter how many {@link Home} or {@link HomeGroup} instances reference a table, it is only crawled once per database.
+ */
+public class ColumnInfoCache
+{
+    // ============================================================
+    // Fields
+    // ============================================================
+
+    private static final String SCHEMA_NAME = "TABLE_SCHEM";
+    private static final String TABLE_NAME = "TABLE_NAME";
+    private static final String COLUMN_NAME = "COLUMN_NAME";
+    private static final String DATA_TYPE = "DATA_TYPE";
+    private static final String TYPE_NAME = "TYPE_NAME";
+
+    private static ConcurrentHashMap<Key, Entry> cache;
+
+    // Key = Database identity.
+    // Value = Table types reported by the database that represent tables.
+    private static ConcurrentHashMap<String, String[]> tableTypes;
+
+    // Milliseconds that an entry is considered fresh. Zero means forever.
+    private static volatile long timeToLive;
+
+    // ============================================================
+    // Constructors
+    // ============================================================
+
+    static
+    {
+        cache = new ConcurrentHashMap<>();
+        tableTypes = new ConcurrentHashMap<>();
+    }
+
+    // ============================================================
+    // Methods
+    // ============================================================
+
+    // ----------
+    // public
+    // ----------
+
+    /**
+     * @return String that identifies the database and user the connection is attached to. The user is part of it because unqualified table
+     * names may resolve to different tables (e.g. through a per user search path or default schema).
+     */
+    public static String getDatabaseId( Connection conn )
+        throws SQLException
+    {
+        DatabaseMetaData meta = conn.getMetaData();
+        String url = meta.getURL();
+        if ( url == null )
+        {
+            // Driver does not report a URL, fall back to identity of the connection itself.
+            return conn.getClass().getName() + "@" + System.identityHashCode( conn );
+        }
+
+        String userName = meta.getUserName();
+
+        return userName == null ? url : userName + "@" + url;
+    }
+
+    public static long getTimeToLive()
+    {
+        return timeToLive;
+    }
+
+    /**
+     * Number of milliseconds after which an entry is refreshed from the database the next time it is used. Zero (the default) means entries
+     * never expire and must be explicitly invalidated.
+     */
+    public static void setTimeToLive( long millis )
+    {
+        timeToLive = millis;
+    }
+
+    /**
+     * @return the cached entry or null if there is none or it is stale.
+     */
+    public static Entry get( String databaseId, String schemaName, String tableName )
+    {
+        Entry entry = cache.get( new Key( databaseId, schemaName, tableName ) );
+        if ( entry == null || entry.isStale() )
+        {
+            return null;
+        }
+
+        return entry;
+    }
+
+    /**
+     * Replaces any existing entry for the table. The previous entry, if any, is marked stale so that Tables holding on to it reload.
+     */
+    public static Entry put( String databaseId, String schemaName, String tableName, Map<String, Table.ColumnInfo> columnInfos )
+    {
+        Entry entry = new Entry( columnInfos );
+        Entry old = cache.put( new Key( databaseId, schemaName, tableName ), entry );
+        if ( old != null )
+        {
+            old.invalidated = true;
+        }
+
+        return entry;
+    }
+
+    /**
+     * Loads the columns of every table in the schema with a single {@link DatabaseMetaData#getColumns} round trip and caches them. Tables that
+     * already have a fresh entry are left untouched.
+     *
+     * @return number of tables found in the schema.
+     */
+    public static int loadSchema( Connection conn, String schemaName )
+        throws SQLException
+    {
+        return loadSchema( conn, schemaName, null );
+    }
+
+    /**
+     * Like {@link #loadSchema(Connection, String)} but only keeps (and caches) the given tables of the schema.
+     *
+     * @param tableNames lowercase table names, or null for every table in the schema.
+     * @return number of the tables found in the schema.
+     */
+    public static int loadSchema( Connection conn, String schemaName, Collection<String> tableNames )
+        throws SQLException
+    {
+        if ( schemaName == null )
+        {
+            throw new FauxjoException( "A schema name is required in order to bulk load column meta data." );
+        }
+
+        String databaseId = getDatabaseId( conn );
+
+        Map<String, Map<String, Table.ColumnInfo>> tables = readSchema( conn, schemaName.toLowerCase(), tableNames );
+        if ( tables.isEmpty() )
+        {
+            tables = readSchema( conn, schemaName.toUpperCase(), tableNames );
+        }
+
+        for ( String tableName : tables.keySet() )
+        {
+            if ( get( databaseId, schemaName, tableName ) == null )
+            {
+                put( databaseId, schemaName, tableName, tables.get( tableName ) );
+            }
+        }
+
+        return tables.size();
+    }
+
+    /**
+     * @return table types of the database that represent tables (e.g. TABLE, BASE TABLE, etc.). Only read once per database.
+     */
+    public static String[] getTableTypes( String databaseId, Connection conn )
+        throws SQLException
+    {
+        String[] types = tableTypes.get( databaseId );
+        if ( types != null )
+        {
+            return types;
+        }
+
+        ArrayList<String> list = new ArrayList<>();
+        ResultSet rs = conn.getMetaData().getTableTypes();
+        while ( rs.next() )
+        {
+            if ( rs.getString( 1 ).toLowerCase().contains( "table" ) )
+            {
+                list.add( rs.getString( 1 ) );
+            }
+        }
+        rs.close();
+
+        types = list.toArray( new String[list.size()] );
+        tableTypes.put( databaseId, types );
+
+        return types;
+    }
+
+    /**
+     * @return String that changes whenever a column is added, removed, renamed or changes type (including a change of the database type
+     * name only, e.g. timestamp to timestamptz, which some drivers report with the same SQL type).
+     */
+    public static String getFingerprint( Map<String, Table.ColumnInfo> columnInfos )
+    {
+        StringBuilder builder = new StringBuilder();
+        for ( String key : new TreeSet<>( columnInfos.keySet() ) )
+        {
+            Table.ColumnInfo columnInfo = columnInfos.get( key );
+            builder.append( columnInfo.getRealName() ).append( ':' ).append( columnInfo.getSqlType() ).append( ':' ).append(
+                columnInfo.getTypeName() ).append( ';' );
+        }
+
+        return builder.toString();
+    }
+
+    public static void invalidate( String databaseId, String schemaName, String tableName )
+    {
+        Entry entry = cache.remove( new Key( databaseId, schemaName, tableName ) );
+        if ( entry != null )
+        {
+            entry.invalidated = true;
+        }
+    }
+
+    /**
+     * Invalidates all tables of the given database.
+     */
+    public static void invalidate( String databaseId )
+    {
+        for ( Key key : cache.keySet() )
+        {
+            if ( key.databaseId.equals( databaseId ) )
+            {
+                invalidate( key.databaseId, key.schemaName, key.tableName );
+            }
+        }
+    }
+
+    public static void invalidateAll()
+    {
+        for ( Key key : cache.keySet() )
+        {
+            invalidate( key.databaseId, key.schemaName, key.tableName );
+        }
+    }
+
+    // ----------
+    // private
+    // ----------
+
+    /**
+     * @return Key = Lowercase table name, Value = column infos of that table.
+     */
+    private static Map<String, Map<String, Table.ColumnInfo>> readSchema( Connection conn, String schemaName, Collection<String> tableNames )
+        throws SQLException
+    {
+        HashMap<String, Map<String, Table.ColumnInfo>> tables = new HashMap<>();
+
+        // getColumns also lists the columns of views etc., only keep the same table types a single table lookup accepts.
+        Set<String> knownTables = new HashSet<>();
+        ResultSet rs = conn.getMetaData().getTables( null, schemaName, null, getTableTypes( getDatabaseId( conn ), conn ) );
+        while ( rs.next() )
+        {
+            if ( schemaName.equalsIgnoreCase( rs.getString( SCHEMA_NAME ) ) )
+            {
+                knownTables.add( rs.getString( TABLE_NAME ).toLowerCase() );
+            }
+        }
+        rs.close();
+
+        rs = conn.getMetaData().getColumns( null, schemaName, null, null );
+        while ( rs.next() )
+        {
+            // The schema argument is a pattern (e.g. '_' is a wildcard) so make sure it really is the requested schema.
+            if ( !schemaName.equalsIgnoreCase( rs.getString( SCHEMA_NAME ) ) )
+            {
+                continue;
+            }
+
+            String tableName = rs.getString( TABLE_NAME ).toLowerCase();
+            if ( !knownTables.contains( tableName ) || ( tableNames != null && !tableNames.contains( tableName ) ) )
+            {
+                continue;
+            }
+            String realName = rs.getString( COLUMN_NAME );
+            int type = rs.getInt( DATA_TYPE );
+            String typeName = rs.getString( TYPE_NAME );
+
+            Map<String, Table.ColumnInfo> columns = tables.get( tableName );
+            if ( columns == null )
+            {
+                columns = new HashMap<>();
+                tables.put( tableName, columns );
+            }
+            columns.put( realName.toLowerCase(), new Table.ColumnInfo( realName, type, typeName ) );
+        }
+        rs.close();
+
+        return tables;
+    }
+
+    // ============================================================
+    // Inner Classes
+    // ============================================================
+
+    /**
+     * Immutable snapshot of the columns of a single table.
+     */
+    public static class Entry
+    {
+        private Map<String, Table.ColumnInfo> columnInfos;
+        private long loadedAt;
+        private volatile boolean invalidated;
+        private volatile String fingerprint;
+
+        Entry( Map<String, Table.ColumnInfo> columnInfos )
+        {
+            this.columnInfos = Collections.unmodifiableMap( new HashMap<>( columnInfos ) );
+            loadedAt = System.currentTimeMillis();
+        }
+
+        /**
+         * Key = Lowercase column name.
+         * Value = ColumnInfo object that specifies the type and real column name.
+         */
+        public Map<String, Table.ColumnInfo> getColumnInfos()
+        {
+            return columnInfos;
+        }
+
+        public String getFingerprint()
+        {
+            if ( fingerprint == null )
+            {
+                fingerprint = ColumnInfoCache.getFingerprint( columnInfos );
+            }
+
+            return fingerprint;
+        }
+
+        public long getLoadedAt()
+        {
+            return loadedAt;
+        }
+
+        public boolean isStale()
+        {
+            if ( invalidated )
+            {
+                return true;
+            }
+
+            long ttl = timeToLive;
+
+            return ttl > 0 && System.currentTimeMillis() - loadedAt > ttl;
+        }
+    }
+
+    private static class Key
+    {
+        private String databaseId;
+        private String schemaName;
+        private String tableName;
+
+        public Key( String databaseId, String schemaName, String tableName )
+        {
+            this.databaseId = databaseId;
+            this.schemaName = schemaName == null ? null : schemaName.toLowerCase();
+            this.tableName = tableName.toLowerCase();
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash( databaseId, schemaName, tableName );
+        }
+
+        @Override
+        public boolean equals( Object otherObj )
+        {
+            if ( this == otherObj )
+            {
+                return true;
+            }
+
+            if ( !( otherObj instanceof Key ) )
+            {
+                return false;
+            }
+
+            Key other = (Key) otherObj;
+
+            return databaseId.equals( other.databaseId ) && Objects.equals( schemaName, other.schemaName ) && tableName.equals( other.tableName );
+        }
+    }
+}
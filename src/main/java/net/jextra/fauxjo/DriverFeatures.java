@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) jextra.net.
+ *
+ * This file is part of the jextra.net software.
+ *
+ * The jextra software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * The jextra software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with the jextra software; if not, write to the Free
+ * Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA
+ * 02111-1307 USA.
+ */
+
+package net.jextra.fauxjo;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Optional JDBC features of a database/driver, detected once per database (see {@link ColumnInfoCache#getDatabaseId}) and shared by all of
+ * its connections.
+ */
+public class DriverFeatures
+{
+    // ============================================================
+    // Fields
+    // ============================================================
+
+    /**
+     * Features assumed when there is no connection to ask.
+     */
+    public static final DriverFeatures NONE = new DriverFeatures( null, false, false );
+
+    // Lowercase product names (as reported by DatabaseMetaData) of databases whose drivers bind and return java.util.UUID natively.
+    private static final Set<String> NATIVE_UUID_PRODUCTS = new HashSet<>( Arrays.asList( "postgresql", "h2", "hsql database engine" ) );
+
+    private static Map<String, DriverFeatures> cache = new ConcurrentHashMap<>();
+    private static volatile boolean javaTimeEnabled = true;
+
+    private String productName;
+    private boolean javaTime;
+    private boolean nativeUuid;
+
+    // ============================================================
+    // Constructors
+    // ============================================================
+
+    public DriverFeatures( String productName, boolean javaTime )
+    {
+        this( productName, javaTime, false );
+    }
+
+    public DriverFeatures( String productName, boolean javaTime, boolean nativeUuid )
+    {
+        this.productName = productName;
+        this.javaTime = javaTime;
+        this.nativeUuid = nativeUuid;
+    }
+
+    // ============================================================
+    // Methods
+    // ============================================================
+
+    // ----------
+    // public
+    // ----------
+
+    public static DriverFeatures get( Connection conn )
+        throws SQLException
+    {
+        if ( conn == null )
+        {
+            return NONE;
+        }
+
+        String databaseId = ColumnInfoCache.getDatabaseId( conn );
+        DriverFeatures features = cache.get( databaseId );
+        if ( features == null )
+        {
+            features = detect( conn );
+            cache.put( databaseId, features );
+        }
+
+        return features;
+    }
+
+    /**
+     * Overrides the detected features of a database, e.g. for a driver that claims JDBC 4.2 but does not handle java.time values.
+     */
+    public static void put( String databaseId, DriverFeatures features )
+    {
+        cache.put( databaseId, features );
+    }
+
+    public static void clear()
+    {
+        cache.clear();
+    }
+
+    public static boolean getJavaTimeEnabled()
+    {
+        return javaTimeEnabled;
+    }
+
+    /**
+     * If false, java.time values always go through the Timestamp/Date coercers even if the driver supports them. Only affects Tables and
+     * BeanBuilders that have not yet read or written a row.
+     */
+    public static void setJavaTimeEnabled( boolean enabled )
+    {
+        javaTimeEnabled = enabled;
+    }
+
+    public String getProductName()
+    {
+        return productName;
+    }
+
+    /**
+     * @return true if the driver reads and writes java.time values directly (JDBC 4.2 getObject(int, Class) and setObject).
+     */
+    public boolean supportsJavaTime()
+    {
+        return javaTime && javaTimeEnabled;
+    }
+
+    /**
+     * @return clause that limits a query to the given number of rows in the SQL dialect of the database, or null if not known.
+     */
+    public String getLimitClause( int rowCount )
+    {
+        String product = productName == null ? "" : productName.toLowerCase();
+        if ( product.contains( "postgres" ) || product.contains( "mysql" ) || product.contains( "mariadb" ) || product.equals( "h2" ) ||
+            product.startsWith( "hsql" ) || product.contains( "sqlite" ) )
+        {
+            return "limit " + rowCount;
+        }
+        else if ( product.contains( "oracle" ) || product.startsWith( "db2" ) || product.contains( "derby" ) )
+        {
+            return "fetch first " + rowCount + " rows only";
+        }
+
+        return null;
+    }
+
+    /**
+     * @return true if the database compares row values, e.g. (a, b) &gt; (?, ?), in lexicographic order (and can use an index for it).
+     */
+    public boolean supportsRowValues()
+    {
+        String product = productName == null ? "" : productName.toLowerCase();
+
+        return product.contains( "postgres" ) || product.contains( "mysql" ) || product.contains( "mariadb" ) || product.equals( "h2" ) ||
+            product.startsWith( "hsql" ) || product.contains( "sqlite" );
+    }
+
+    /**
+     * @return true if the driver binds java.util.UUID with setObject and returns it from getObject for its UUID column type.
+     */
+    public boolean supportsNativeUuid()
+    {
+        return nativeUuid;
+    }
+
+    // ----------
+    // private
+    // ----------
+
+    private static DriverFeatures detect( Connection conn )
+        throws SQLException
+    {
+        DatabaseMetaData meta = conn.getMetaData();
+
+        boolean javaTime;
+        try
+        {
+            int major = meta.getJDBCMajorVersion();
+            javaTime = major > 4 || ( major == 4 && meta.getJDBCMinorVersion() >= 2 );
+        }
+        catch ( AbstractMethodError | SQLFeatureNotSupportedException ex )
+        {
+            // Pre JDBC 3 driver.
+            javaTime = false;
+        }
+
+        String productName = meta.getDatabaseProductName();
+        boolean nativeUuid = productName != null && NATIVE_UUID_PRODUCTS.contains( productName.toLowerCase() );
+
+        return new DriverFeatures( productName, javaTime, nativeUuid );
+    }
+}
@@ -0,0 +1,754 @@
+/*
+ * Copyright (C) jextra.net.
+ *
+ * This file is part of the jextra.net software.
+ *
+ * The jextra software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * The jextra software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with the jextra software; if not, write to the Free
+ * Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA
+ * 02111-1307 USA.
+ */
+
+package net.jextra.fauxjo;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+/**
+ * Second-level cache of beans by primary key values (see {@link Table#getPrimaryKeyValues}), used by {@link Home#findByKey} and
+ * {@link Home#findByKeys} when set on a Table. It holds at most a fixed number of entries and evicts W-TinyLFU style: new entries enter a small LRU window, and only get into the
+ * main (segmented LRU) area if they have been asked for more often than the entry they would push out, which keeps one-off lookups from
+ * flushing the reference rows that are read all the time.
+ * <p>
+ * Stale entry rules:
+ * <ul>
+ * <li>An entry is served until its time to live, counted from when it was loaded or written, has passed (never if zero).</li>
+ * <li>Keys without a row are only cached if a negative time to live is set, and then expire after that time.</li>
+ * <li>Entries are only filled by loads. Inserts, updates and deletes through the owning Table remove the entry of their key (the bean
+ * written may lack database defaults and still belongs to the caller), so the next lookup reads the row again.</li>
+ * <li>A load of a key that started before the last write (put or invalidate) of that key is returned to its caller but not cached.</li>
+ * <li>The write is seen when the statement runs, not when its transaction commits. A lookup through the writing connection before the
+ * commit caches the uncommitted row, so after a rollback call {@link #clear()}. A lookup through another connection in that time reads
+ * and caches the old committed row until it expires, so either use a time to live or invalidate the written keys again after the commit.
+ * </li>
+ * <li>Multi-row inserts do not know the generated keys of their beans, so they drop all negative entries.</li>
+ * <li>Changes made any other way (other Tables, plain SQL, other processes) are only seen once the entry expires or is invalidated.</li>
+ * <li>Negative results of a load that overlaps a {@link #clear()} or {@link #invalidateMissing()} are not cached.</li>
+ * <li>Cached beans are shared by all callers. Changing one without updating it through the Table leaves the change in the cache.</li>
+ * </ul>
+ */
+public class EntityCache<T>
+{
+    // ============================================================
+    // Fields
+    // ============================================================
+
+    private int maximumSize;
+    private int windowMaximumSize;
+    private int protectedMaximumSize;
+    private long timeToLive;
+    private long negativeTimeToLive;
+    private LongSupplier clock;
+
+    private Map<List<Object>, Node<T>> nodes;
+    private NodeList<T> window;
+    private NodeList<T> probation;
+    private NodeList<T> protectedList;
+    private FrequencySketch sketch;
+    // Incremented by every write so that loads which overlap a write of their key are not cached.
+    private long writeCount;
+    // Values of writeCount at the last clear and at the last invalidation of the missing keys.
+    private long lastClear;
+    private long lastMissingInvalidation;
+    // Number of loads in progress.
+    private int loading;
+    // Key = Key written while loads were in progress.
+    // Value = Value of writeCount at the last write of the key. Emptied whenever no load is in progress, so it stays small.
+    private Map<List<Object>, Long> keyWrites;
+
+    private long hitCount;
+    private long negativeHitCount;
+    private long missCount;
+    private long evictionCount;
+    private long expirationCount;
+
+    // ============================================================
+    // Constructors
+    // ============================================================
+
+    public EntityCache( int maximumSize )
+    {
+        if ( maximumSize < 1 )
+        {
+            throw new IllegalArgumentException( "The maximum size of an entity cache must be at least 1." );
+        }
+
+        this.maximumSize = maximumSize;
+        // 1% window, the main area is 20% probation and 80% protected.
+        windowMaximumSize = Math.max( 1, maximumSize / 100 );
+        protectedMaximumSize = ( maximumSize - windowMaximumSize ) * 4 / 5;
+        clock = System::nanoTime;
+
+        nodes = new HashMap<>();
+        keyWrites = new HashMap<>();
+        window = new NodeList<>();
+        probation = new NodeList<>();
+        protectedList = new NodeList<>();
+        sketch = new FrequencySketch( maximumSize );
+    }
+
+    // ============================================================
+    // Methods
+    // ============================================================
+
+    // ----------
+    // public
+    // ----------
+
+    public int getMaximumSize()
+    {
+        return maximumSize;
+    }
+
+    public synchronized long getTimeToLive( TimeUnit unit )
+    {
+        return unit.convert( timeToLive, TimeUnit.NANOSECONDS );
+    }
+
+    /**
+     * @param timeToLive time an entry is served after it was loaded or written, zero (the default) to keep it until evicted.
+     */
+    public synchronized void setTimeToLive( long timeToLive, TimeUnit unit )
+    {
+        this.timeToLive = unit.toNanos( timeToLive );
+    }
+
+    public synchronized long getNegativeTimeToLive( TimeUnit unit )
+    {
+        return unit.convert( negativeTimeToLive, TimeUnit.NANOSECONDS );
+    }
+
+    /**
+     * @param negativeTimeToLive time a key without a row is remembered as missing, zero (the default) to not cache missing keys.
+     */
+    public synchronized void setNegativeTimeToLive( long negativeTimeToLive, TimeUnit unit )
+    {
+        this.negativeTimeToLive = unit.toNanos( negativeTimeToLive );
+    }
+
+    /**
+     * @param clock source of the current time in nanoseconds (System.nanoTime by default), replaceable to test expiration.
+     */
+    public synchronized void setClock( LongSupplier clock )
+    {
+        this.clock = clock;
+    }
+
+    /**
+     * @return cached bean of the key, else the one from the loader (which may return null if there is no row). The loader is called
+     * without holding the cache lock so concurrent misses of the same key may each load it.
+     */
+    public T get( List<Object> key, Loader<T> loader )
+        throws SQLException
+    {
+        long loadWriteCount;
+        synchronized ( this )
+        {
+            Node<T> node = getNode( key );
+            if ( node != null )
+            {
+                if ( node.bean == null )
+                {
+                    negativeHitCount++;
+                }
+                else
+                {
+                    hitCount++;
+                }
+
+                return node.bean;
+            }
+
+            missCount++;
+            loadWriteCount = writeCount;
+            loading++;
+        }
+
+        T bean = null;
+        try
+        {
+            bean = loader.load( key );
+        }
+        finally
+        {
+            synchronized ( this )
+            {
+                if ( isLoadCurrent( key, bean, loadWriteCount ) && ( bean != null || negativeTimeToLive > 0 ) )
+                {
+                    store( key, bean );
+                }
+                endLoad();
+            }
+        }
+
+        return bean;
+    }
+
+    /**
+     * Like {@link #get} for many keys at once: the keys that are not cached are loaded with a single call of the loader.
+     *
+     * @return beans of the keys that have a row. Keys without one are left out.
+     */
+    public Map<List<Object>, T> getAll( Collection<List<Object>> keys, BatchLoader<T> loader )
+        throws SQLException
+    {
+        Map<List<Object>, T> result = new HashMap<>();
+        List<List<Object>> missing = new ArrayList<>();
+        long loadWriteCount;
+        synchronized ( this )
+        {
+            for ( List<Object> key : keys )
+            {
+                Node<T> node = getNode( key );
+                if ( node == null )
+                {
+                    missCount++;
+                    missing.add( key );
+                }
+                else if ( node.bean == null )
+                {
+                    negativeHitCount++;
+                }
+                else
+                {
+                    hitCount++;
+                    result.put( key, node.bean );
+                }
+            }
+            if ( missing.isEmpty() )
+            {
+                return result;
+            }
+
+            loadWriteCount = writeCount;
+            loading++;
+        }
+
+        Map<List<Object>, T> loaded = Collections.emptyMap();
+        try
+        {
+            loaded = loader.load( missing );
+        }
+        finally
+        {
+            synchronized ( this )
+            {
+                for ( List<Object> key : missing )
+                {
+                    T bean = loaded.get( key );
+                    if ( isLoadCurrent( key, bean, loadWriteCount ) && ( bean != null || negativeTimeToLive > 0 ) )
+                    {
+                        store( key, bean );
+                    }
+                }
+                endLoad();
+            }
+        }
+        result.putAll( loaded );
+
+        return result;
+    }
+
+    /**
+     * @return true if the key is cached, as a bean or as missing.
+     */
+    public synchronized boolean contains( List<Object> key )
+    {
+        return getNode( key ) != null;
+    }
+
+    /**
+     * Caches the bean of the key, replacing what was there. A null bean marks the key as missing if negative caching is on, else drops it.
+     */
+    public synchronized void put( List<Object> key, T bean )
+    {
+        if ( bean == null && negativeTimeToLive == 0 )
+        {
+            invalidate( key );
+            return;
+        }
+
+        writeCount++;
+        recordKeyWrite( key );
+        store( key, bean );
+    }
+
+    public synchronized void invalidate( List<Object> key )
+    {
+        writeCount++;
+        recordKeyWrite( key );
+        Node<T> node = nodes.get( key );
+        if ( node != null )
+        {
+            remove( node );
+        }
+    }
+
+    /**
+     * Drops all keys that are cached as missing.
+     */
+    public synchronized void invalidateMissing()
+    {
+        writeCount++;
+        lastMissingInvalidation = writeCount;
+        for ( Node<T> node : new ArrayList<>( nodes.values() ) )
+        {
+            if ( node.bean == null )
+            {
+                remove( node );
+            }
+        }
+    }
+
+    public synchronized void clear()
+    {
+        writeCount++;
+        lastClear = writeCount;
+        nodes.clear();
+        window.clear();
+        probation.clear();
+        protectedList.clear();
+    }
+
+    public synchronized int size()
+    {
+        return nodes.size();
+    }
+
+    public synchronized long getHitCount()
+    {
+        return hitCount;
+    }
+
+    /**
+     * @return number of lookups answered by a key cached as missing.
+     */
+    public synchronized long getNegativeHitCount()
+    {
+        return negativeHitCount;
+    }
+
+    public synchronized long getMissCount()
+    {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount()
+    {
+        return evictionCount;
+    }
+
+    public synchronized long getExpirationCount()
+    {
+        return expirationCount;
+    }
+
+    /**
+     * @return fraction of lookups answered from the cache (including negative hits), or 1 if there were none.
+     */
+    public synchronized double getHitRate()
+    {
+        long lookups = hitCount + negativeHitCount + missCount;
+
+        return lookups == 0 ? 1.0 : (double) ( hitCount + negativeHitCount ) / lookups;
+    }
+
+    public synchronized void resetStats()
+    {
+        hitCount = 0;
+        negativeHitCount = 0;
+        missCount = 0;
+        evictionCount = 0;
+        expirationCount = 0;
+    }
+
+    // ----------
+    // package
+    // ----------
+
+    /**
+     * @return area the key is cached in (without counting it as a lookup), or null if it is not cached.
+     */
+    synchronized Region getRegion( List<Object> key )
+    {
+        Node<T> node = nodes.get( key );
+        if ( node == null )
+        {
+            return null;
+        }
+
+        return node.list == window ? Region.WINDOW : node.list == probation ? Region.PROBATION : Region.PROTECTED;
+    }
+
+    // ----------
+    // private
+    // ----------
+
+    /**
+     * @return true if nothing was written since the load started that makes its result for the key stale.
+     */
+    private boolean isLoadCurrent( List<Object> key, T bean, long loadWriteCount )
+    {
+        Long keyWrite = keyWrites.get( key );
+        if ( keyWrite != null && keyWrite > loadWriteCount )
+        {
+            return false;
+        }
+
+        if ( lastClear > loadWriteCount )
+        {
+            return false;
+        }
+
+        return bean != null || lastMissingInvalidation <= loadWriteCount;
+    }
+
+    private void recordKeyWrite( List<Object> key )
+    {
+        if ( loading > 0 )
+        {
+            keyWrites.put( new ArrayList<>( key ), writeCount );
+        }
+    }
+
+    private void endLoad()
+    {
+        loading--;
+        if ( loading == 0 )
+        {
+            keyWrites.clear();
+        }
+    }
+
+    private Node<T> getNode( List<Object> key )
+    {
+        sketch.increment( key );
+
+        Node<T> node = nodes.get( key );
+        if ( node == null )
+        {
+            return null;
+        }
+
+        if ( node.expiresAt != 0 && clock.getAsLong() - node.expiresAt >= 0 )
+        {
+            remove( node );
+            expirationCount++;
+            return null;
+        }
+
+        onAccess( node );
+
+        return node;
+    }
+
+    private void store( List<Object> key, T bean )
+    {
+        long ttl = bean == null ? negativeTimeToLive : timeToLive;
+        // Zero means no expiry, so a computed expiry of zero is moved by one.
+        long expiresAt = ttl == 0 ? 0 : ( clock.getAsLong() + ttl ) | 1;
+
+        Node<T> node = nodes.get( key );
+        if ( node != null )
+        {
+            node.bean = bean;
+            node.expiresAt = expiresAt;
+            onAccess( node );
+            return;
+        }
+
+        node = new Node<>( new ArrayList<>( key ), bean, expiresAt );
+        nodes.put( node.key, node );
+        node.list = window;
+        window.addFirst( node );
+
+        if ( window.size > windowMaximumSize )
+        {
+            admit( window.removeLast() );
+        }
+    }
+
+    /**
+     * Moves the candidate from the window into the main area if there is room or it is used more often than the entry it would evict.
+     */
+    private void admit( Node<T> candidate )
+    {
+        if ( nodes.size() <= maximumSize )
+        {
+            candidate.list = probation;
+            probation.addFirst( candidate );
+            return;
+        }
+
+        Node<T> victim = probation.size > 0 ? probation.last() : protectedList.last();
+        if ( victim != null && sketch.frequency( candidate.key ) > sketch.frequency( victim.key ) )
+        {
+            remove( victim );
+            candidate.list = probation;
+            probation.addFirst( candidate );
+        }
+        else
+        {
+            nodes.remove( candidate.key );
+            candidate.list = null;
+        }
+        evictionCount++;
+    }
+
+    private void onAccess( Node<T> node )
+    {
+        if ( node.list == probation )
+        {
+            probation.remove( node );
+            node.list = protectedList;
+            protectedList.addFirst( node );
+
+            if ( protectedList.size > protectedMaximumSize )
+            {
+                Node<T> demoted = protectedList.removeLast();
+                demoted.list = probation;
+                probation.addFirst( demoted );
+            }
+        }
+        else
+        {
+            node.list.moveToFirst( node );
+        }
+    }
+
+    private void remove( Node<T> node )
+    {
+        nodes.remove( node.key );
+        node.list.remove( node );
+        node.list = null;
+    }
+
+    // ============================================================
+    // Inner Classes
+    // ============================================================
+
+    /**
+     * Areas of the cache, see the class comment.
+     */
+    enum Region
+    {
+        WINDOW, PROBATION, PROTECTED
+    }
+
+    public interface Loader<T>
+    {
+        /**
+         * @return bean of the key or null if there is no row.
+         */
+        T load( List<Object> key )
+            throws SQLException;
+    }
+
+    public interface BatchLoader<T>
+    {
+        /**
+         * @return bean by key of the given keys that have a row.
+         */
+        Map<List<Object>, T> load( List<List<Object>> keys )
+            throws SQLException;
+    }
+
+    private static class Node<T>
+    {
+        private List<Object> key;
+        private T bean;
+        // Nano time of expiry, 0 if the entry does not expire.
+        private long expiresAt;
+        private NodeList<T> list;
+        private Node<T> previous;
+        private Node<T> next;
+
+        public Node( List<Object> key, T bean, long expiresAt )
+        {
+            this.key = key;
+            this.bean = bean;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Doubly linked LRU list, most recently used first.
+     */
+    private static class NodeList<T>
+    {
+        private Node<T> first;
+        private Node<T> last;
+        private int size;
+
+        public void addFirst( Node<T> node )
+        {
+            node.previous = null;
+            node.next = first;
+            if ( first == null )
+            {
+                last = node;
+            }
+            else
+            {
+                first.previous = node;
+            }
+            first = node;
+            size++;
+        }
+
+        public void remove( Node<T> node )
+        {
+            if ( node.previous == null )
+            {
+                first = node.next;
+            }
+            else
+            {
+                node.previous.next = node.next;
+            }
+            if ( node.next == null )
+            {
+                last = node.previous;
+            }
+            else
+            {
+                node.next.previous = node.previous;
+            }
+            node.previous = null;
+            node.next = null;
+            size--;
+        }
+
+        public void moveToFirst( Node<T> node )
+        {
+            if ( node != first )
+            {
+                remove( node );
+                addFirst( node );
+            }
+        }
+
+        public Node<T> last()
+        {
+            return last;
+        }
+
+        public Node<T> removeLast()
+        {
+            Node<T> node = last;
+            remove( node );
+
+            return node;
+        }
+
+        public void clear()
+        {
+            first = null;
+            last = null;
+            size = 0;
+        }
+    }
+
+    /**
+     * Count-min sketch of how often keys were asked for, with 4-bit counters that are halved periodically so that old popularity fades.
+     */
+    private static class FrequencySketch
+    {
+        private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+        private static final int MAX_COUNT = 15;
+
+        private byte[][] table;
+        private int mask;
+        private int sampleSize;
+        private int additions;
+
+        public FrequencySketch( int maximumSize )
+        {
+            int width = Integer.highestOneBit( Math.max( 16, maximumSize ) - 1 ) << 1;
+            table = new byte[SEEDS.length][width];
+            mask = width - 1;
+            sampleSize = (int) Math.min( Integer.MAX_VALUE, 10L * maximumSize );
+        }
+
+        public int frequency( Object key )
+        {
+            int hash = spread( key.hashCode() );
+            int frequency = MAX_COUNT;
+            for ( int i = 0; i < SEEDS.length; i++ )
+            {
+                frequency = Math.min( frequency, table[i][indexOf( hash, i )] );
+            }
+
+            return frequency;
+        }
+
+        public void increment( Object key )
+        {
+            int hash = spread( key.hashCode() );
+            boolean added = false;
+            for ( int i = 0; i < SEEDS.length; i++ )
+            {
+                int index = indexOf( hash, i );
+                if ( table[i][index] < MAX_COUNT )
+                {
+                    table[i][index]++;
+                    added = true;
+                }
+            }
+
+            if ( added && ++additions >= sampleSize )
+            {
+                reset();
+            }
+        }
+
+        private int indexOf( int hash, int row )
+        {
+            long h = ( hash + SEEDS[row] ) * SEEDS[row];
+            h += h >>> 32;
+
+            return (int) h & mask;
+        }
+
+        private void reset()
+        {
+            for ( byte[] row : table )
+            {
+                for ( int i = 0; i < row.length; i++ )
+                {
+                    row[i] = (byte) ( row[i] >>> 1 );
+                }
+            }
+            additions /= 2;
+        }
+
+        private static int spread( int hash )
+        {
+            hash = ( ( hash >>> 16 ) ^ hash ) * 0x45d9f3b;
+
+            return ( hash >>> 16 ) ^ hash;
+        }
+    }
+}
@@ -23,6 +23,10 @@ package net.jextra.fauxjo;
 
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.regex.*;
+import java.util.stream.*;
 
 /**
  * Base implementation of a data access object.
@@ -33,11 +37,27 @@ public class Home<T>
     // Fields
     // ============================================================
 
+    // Trailing clause of SQL that already limits its rows, or that a limit can not be appended after (locking clauses).
+    private static final Pattern TRAILING_LIMIT = Pattern.compile(
+        "\\b(limit\\s+[^\\s)]+(\\s*,\\s*[^\\s)]+|\\s+offset\\s+[^\\s)]+)?|offset\\s+[^\\s)]+(\\s+rows?)?|fetch\\s+(first|next)\\s+[^)]*\\bonly|" +
+            "for\\s+(update|share|no\\s+key\\s+update|key\\s+share)\\b[^)]*)\\s*;?\\s*$", Pattern.CASE_INSENSITIVE );
+
     private Connection conn;
     private boolean supportsGeneratedKeys = true;
     private Table<T> table;
     private BeanBuilder<T> beanBuilder;
     private StatementCache statementCache;
+    private boolean ownsStatementCache;
+
+    // Key = SQL prepared through this Home.
+    // Value = Number of times it was prepared.
+    private Map<String, LongAdder> sqlHits;
+    private int maxTrackedStatements;
+    private int prepareOnConnectCount;
+    private boolean prepareOnConnect;
+    private Executor prepareOnConnectExecutor;
+    private int streamingFetchSize;
+    private boolean appendLimit;
 
     // ============================================================
     // Constructors
@@ -45,17 +65,13 @@ public class Home<T>
 
     public Home( String tableName, Class<T> beanClass )
     {
-        table = new Table<>( tableName, beanClass );
-        beanBuilder = new BeanBuilder<>( beanClass );
-        beanBuilder.setAutoCloseResultSet( true );
+        this( new Table<>( tableName, beanClass ), new BeanBuilder<>( beanClass ) );
     }
 
     public Home( Connection conn, String tableName, Class<T> beanClass )
         throws SQLException
     {
-        table = new Table<>( tableName, beanClass );
-        beanBuilder = new BeanBuilder<>( beanClass );
-        beanBuilder.setAutoCloseResultSet( true );
+        this( tableName, beanClass );
         setConnection( conn );
     }
 
@@ -64,14 +80,16 @@ public class Home<T>
         this.table = table;
         this.beanBuilder = beanBuilder;
         beanBuilder.setAutoCloseResultSet( true );
+        sqlHits = new ConcurrentHashMap<>();
+        maxTrackedStatements = 1000;
+        prepareOnConnectCount = 16;
+        streamingFetchSize = 1000;
     }
 
     public Home( Connection conn, Table<T> table, BeanBuilder<T> beanBuilder )
         throws SQLException
     {
-        this.table = table;
-        this.beanBuilder = beanBuilder;
-        beanBuilder.setAutoCloseResultSet( true );
+        this( table, beanBuilder );
         setConnection( conn );
     }
 
@@ -102,21 +120,146 @@ public class Home<T>
     public void setConnection( Connection conn )
         throws SQLException
     {
-        if ( statementCache != null )
+        setConnection( conn, null );
+    }
+
+    /**
+     * @param statementCache cache shared with the other users of the connection (e.g. all Homes of a {@link HomeGroup}) or null for this
+     * Home to use its own. Either way, the Table of this Home shares the same cache.
+     */
+    public void setConnection( Connection conn, StatementCache statementCache )
+        throws SQLException
+    {
+        this.conn = conn;
+        this.statementCache = Table.resolveStatementCache( this.statementCache, ownsStatementCache, statementCache );
+        ownsStatementCache = statementCache == null;
+        table.setConnection( conn, this.statementCache );
+
+        if ( conn != null && prepareOnConnect )
         {
-            statementCache.clear();
-            statementCache = null;
+            if ( prepareOnConnectExecutor == null )
+            {
+                prepareStatements();
+            }
+            else
+            {
+                prepareOnConnectExecutor.execute( () ->
+                {
+                    try
+                    {
+                        prepareStatements();
+                    }
+                    catch ( SQLException ex )
+                    {
+                        // Only a warm up, the statements are prepared again on first use.
+                    }
+                } );
+            }
         }
+    }
 
-        this.conn = conn;
-        table.setConnection( conn );
-        if ( conn != null )
+    public boolean getPrepareOnConnect()
+    {
+        return prepareOnConnect;
+    }
+
+    /**
+     * If true, setting the connection prepares the CRUD statements of the table and the most used statements of this Home (see
+     * {@link #prepareStatements()}).
+     */
+    public void setPrepareOnConnect( boolean prepareOnConnect )
+    {
+        this.prepareOnConnect = prepareOnConnect;
+    }
+
+    public Executor getPrepareOnConnectExecutor()
+    {
+        return prepareOnConnectExecutor;
+    }
+
+    /**
+     * @param executor runs the prepare on connect in the background, or null (the default) to prepare before setConnection returns. The
+     * background prepare uses the connection at the same time as the caller, so only use an executor with drivers that allow that.
+     */
+    public void setPrepareOnConnectExecutor( Executor executor )
+    {
+        this.prepareOnConnectExecutor = executor;
+    }
+
+    public int getPrepareOnConnectCount()
+    {
+        return prepareOnConnectCount;
+    }
+
+    /**
+     * Number of most used statements prepared on connect (default 16).
+     */
+    public void setPrepareOnConnectCount( int count )
+    {
+        this.prepareOnConnectCount = count;
+    }
+
+    public int getMaxTrackedStatements()
+    {
+        return maxTrackedStatements;
+    }
+
+    /**
+     * Number of distinct SQL strings whose use is counted (default 1000). Statements beyond that are not tracked.
+     */
+    public void setMaxTrackedStatements( int maxTrackedStatements )
+    {
+        this.maxTrackedStatements = maxTrackedStatements;
+    }
+
+    /**
+     * @return the SQL prepared through this Home, most used first.
+     */
+    public List<String> getHotStatements( int max )
+    {
+        List<Map.Entry<String, LongAdder>> entries = new ArrayList<>( sqlHits.entrySet() );
+        entries.sort( ( a, b ) -> Long.compare( b.getValue().sum(), a.getValue().sum() ) );
+
+        List<String> hot = new ArrayList<>();
+        for ( int i = 0; i < entries.size() && i < max; i++ )
         {
-            statementCache = new StatementCache();
+            hot.add( entries.get( i ).getKey() );
         }
+
+        return hot;
     }
 
-    public Table getTable()
+    public void clearHotStatements()
+    {
+        sqlHits.clear();
+    }
+
+    /**
+     * Prepares the insert, update and delete statements of the table and the most used statements of this Home on the current connection.
+     */
+    public void prepareStatements()
+        throws SQLException
+    {
+        Connection conn = this.conn;
+        StatementCache statementCache = this.statementCache;
+        if ( conn == null )
+        {
+            return;
+        }
+
+        table.prepareStatements();
+        for ( String sql : getHotStatements( prepareOnConnectCount ) )
+        {
+            statementCache.prepareStatement( conn, sql, supportsGeneratedKeys ).close();
+        }
+    }
+
+    public StatementCache getStatementCache()
+    {
+        return statementCache;
+    }
+
+    public Table<T> getTable()
     {
         return table;
     }
@@ -126,9 +269,24 @@ public class Home<T>
         return beanBuilder;
     }
 
+    /**
+     * @return statement from the cache for the exclusive use of the caller. Closing it (which the bean building methods do after reading the
+     * ResultSet) puts it back in the cache. Statements that are never closed count against the maximum of the {@link StatementCache} until
+     * they are garbage collected, and the oldest are taken back once more than the maximum are out.
+     */
     public PreparedStatement prepareStatement( String sql )
         throws SQLException
     {
+        LongAdder hits = sqlHits.get( sql );
+        if ( hits == null && sqlHits.size() < maxTrackedStatements )
+        {
+            hits = sqlHits.computeIfAbsent( sql, k -> new LongAdder() );
+        }
+        if ( hits != null )
+        {
+            hits.increment();
+        }
+
         return statementCache.prepareStatement( conn, sql, supportsGeneratedKeys );
     }
 
@@ -188,11 +346,220 @@ public class Home<T>
         return table.delete( bean );
     }
 
+    /**
+     * @param key values of the primary key columns in {@link Table#getPrimaryKeys()} order (alphabetical by column).
+     * @return bean with the given primary key or null.
+     */
+    public T findByKey( Object... key )
+        throws SQLException
+    {
+        List<Object> values = table.toPrimaryKeyValues( key.length == 1 ? key[0] : key );
+
+        EntityCache<T> entityCache = table.getEntityCache();
+        if ( entityCache != null )
+        {
+            return entityCache.get( values, this::loadByKey );
+        }
+
+        return loadByKey( values );
+    }
+
+    public EntityCache<T> getEntityCache()
+    {
+        return table.getEntityCache();
+    }
+
+    /**
+     * Caches beans by primary key: {@link #findByKey} and {@link #findByKeys} look there first and the inserts, updates and deletes of the
+     * Table invalidate the keys they write. See {@link EntityCache} for when cached beans can be stale.
+     *
+     * @param entityCache cache or null to turn caching off.
+     */
+    public void setEntityCache( EntityCache<T> entityCache )
+    {
+        table.setEntityCache( entityCache );
+    }
+
+    /**
+     * @param key values of the primary key columns in {@link Table#getPrimaryKeys()} order.
+     * @return true if a row with the given primary key exists. No bean is built.
+     */
+    public boolean existsByKey( Object... key )
+        throws SQLException
+    {
+        List<Object> values = table.toPrimaryKeyValues( key.length == 1 ? key[0] : key );
+
+        try ( PreparedStatement statement = prepareStatement( table.getExistsByKeySql() ) )
+        {
+            table.setPrimaryKeyValues( statement, 1, values );
+
+            return hasRow( statement );
+        }
+    }
+
+    /**
+     * @param clause where/etc. clause of the query, may be null.
+     * @return true if the table has a row matching the clause. Only a constant of at most one row is read, no bean is built.
+     */
+    public boolean exists( String clause, Object... params )
+        throws SQLException
+    {
+        String sql = "select 1 from " + getFullTableName() + ( clause == null || clause.isEmpty() ? "" : " " + clause );
+
+        return hasRow( prepareBoundStatement( withLimit( sql, 1 ), params ) );
+    }
+
+    /**
+     * @param clause where clause of the query, may be null.
+     * @return number of rows matching the clause.
+     */
+    public long count( String clause, Object... params )
+        throws SQLException
+    {
+        String sql = "select count(*) from " + getFullTableName() + ( clause == null || clause.isEmpty() ? "" : " " + clause );
+
+        try ( PreparedStatement statement = prepareBoundStatement( sql, params );
+              ResultSet rs = statement.executeQuery() )
+        {
+            return rs.next() ? rs.getLong( 1 ) : 0;
+        }
+    }
+
+    /**
+     * @param keys single values, or Object[]/List values for a composite primary key.
+     * @return beans of the given keys in the order of the keys. Keys without a row are skipped, repeated keys give one bean.
+     */
+    public List<T> findByKeys( Collection<?> keys )
+        throws SQLException
+    {
+        return new ArrayList<>( findByKeysAsMap( keys ).values() );
+    }
+
+    /**
+     * Loads the beans of many keys in a few round trips: the keys are sent in batches of a few fixed sizes (see
+     * {@link Table#getKeyBatchSize}) so that the same handful of cached statements is reused. With an {@link EntityCache} set, only the keys
+     * it does not have are loaded, and the loaded beans are cached.
+     *
+     * @param keys single values, or Object[]/List values for a composite primary key.
+     * @return bean by key in the order of the keys. Keys without a row are left out. The map key is the key value converted to the property
+     * class, or a List of those for a composite key.
+     */
+    public Map<Object, T> findByKeysAsMap( Collection<?> keys )
+        throws SQLException
+    {
+        boolean composite = table.getPrimaryKeys().size() > 1;
+
+        // Distinct keys, in order.
+        Set<List<Object>> keyValues = new LinkedHashSet<>();
+        for ( Object key : keys )
+        {
+            keyValues.add( table.toPrimaryKeyValues( key ) );
+        }
+
+        EntityCache<T> entityCache = table.getEntityCache();
+        Map<List<Object>, T> found = entityCache != null ? entityCache.getAll( keyValues, this::loadByKeys ) :
+            loadByKeys( new ArrayList<>( keyValues ) );
+
+        Map<Object, T> result = new LinkedHashMap<>();
+        for ( List<Object> values : keyValues )
+        {
+            T bean = found.get( values );
+            if ( bean != null )
+            {
+                result.put( composite ? values : values.get( 0 ), bean );
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @return scan of the whole table in primary key order, read pageSize rows at a time.
+     */
+    public KeysetScan<T> scan( int pageSize )
+    {
+        return new KeysetScan<>( this, pageSize, null );
+    }
+
+    /**
+     * @param filter condition (without "where") of the rows to scan, may reference ? parameters.
+     * @return scan of the rows meeting the filter in primary key order, read pageSize rows at a time.
+     */
+    public KeysetScan<T> scan( int pageSize, String filter, Object... filterParams )
+    {
+        return new KeysetScan<>( this, pageSize, filter, filterParams );
+    }
+
     public String buildBasicSelect( String clause )
     {
         return table.buildBasicSelectStatement( clause );
     }
 
+    /**
+     * Partial projection, see {@link Table#buildSelectStatement}.
+     */
+    public String buildSelect( Collection<String> columns, String clause )
+        throws SQLException
+    {
+        return table.buildSelectStatement( columns, clause );
+    }
+
+    /**
+     * Loads only the given columns of the rows matching the clause, the other bean properties are left unset.
+     */
+    public List<T> getPartialList( Collection<String> columns, String clause, Object... params )
+        throws SQLException
+    {
+        try ( PreparedStatement statement = prepareBoundStatement( buildSelect( columns, clause ), params ) )
+        {
+            return beanBuilder.getPartialList( statement.executeQuery() );
+        }
+    }
+
+    public boolean getAppendLimit()
+    {
+        return appendLimit;
+    }
+
+    /**
+     * If true, {@link #getFirst(String, Object...)} and {@link #getUnique(String, Object...)} also add a LIMIT (or FETCH FIRST) clause to the
+     * SQL for databases whose dialect is known, unless the SQL already has one. Off by default, max rows is usually enough.
+     */
+    public void setAppendLimit( boolean appendLimit )
+    {
+        this.appendLimit = appendLimit;
+    }
+
+    /**
+     * Prepares, binds and runs the query, reading only its first row (see {@link BeanBuilder#getFirst(PreparedStatement, boolean, boolean)}).
+     */
+    public T getFirst( String sql, Object... params )
+        throws SQLException
+    {
+        return getFirst( prepareBoundStatement( appendLimit ? withLimit( sql, 1 ) : sql, params ) );
+    }
+
+    /**
+     * Prepares, binds and runs the query, failing if it has more than one row. Only two rows are ever read.
+     */
+    public T getUnique( String sql, Object... params )
+        throws SQLException
+    {
+        return getUnique( prepareBoundStatement( appendLimit ? withLimit( sql, 2 ) : sql, params ) );
+    }
+
+    public T getFirst( PreparedStatement statement )
+        throws SQLException
+    {
+        return beanBuilder.getFirst( statement );
+    }
+
+    public T getUnique( PreparedStatement statement )
+        throws SQLException
+    {
+        return beanBuilder.getUnique( statement );
+    }
+
     public T getFirst( ResultSet rs )
         throws SQLException
     {
@@ -241,9 +608,250 @@ public class Home<T>
         return beanBuilder.getSet( rs, maxNumRows );
     }
 
+    /**
+     * @return stream of the beans of the ResultSet, closing it closes the ResultSet and its statement.
+     */
+    public Stream<T> stream( ResultSet rs )
+    {
+        return beanBuilder.stream( rs );
+    }
+
+    public int getStreamingFetchSize()
+    {
+        return streamingFetchSize;
+    }
+
+    /**
+     * Number of rows the driver fetches per round trip for the streaming queries (default 1000).
+     */
+    public void setStreamingFetchSize( int streamingFetchSize )
+    {
+        this.streamingFetchSize = streamingFetchSize;
+    }
+
+    /**
+     * Runs a query whose rows are fetched from the server a batch at a time while iterating (a server side cursor), so any number of rows can
+     * be read in constant memory. The statement is forward-only and read-only with the streaming fetch size. Drivers like PostgreSQL only use
+     * a cursor inside a transaction, so if the connection is in auto-commit mode it is switched off until the iterator is closed (which also
+     * happens when it is read to the end). Other work on the connection in the meantime is part of that transaction.
+     */
+    public ResultSetIterator<T> getStreamingIterator( String sql, Object... params )
+        throws SQLException
+    {
+        StreamingQuery query = executeStreamingQuery( sql, params );
+        try
+        {
+            return new ResultSetIterator<>( query.resultSet, beanBuilder ).onClose( query );
+        }
+        catch ( SQLException ex )
+        {
+            query.resultSet.close();
+            query.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Same as {@link #getStreamingIterator} but as a Stream. The stream must always be closed (e.g. with try-with-resources), that is when
+     * auto-commit is restored.
+     */
+    public Stream<T> getStreamingStream( String sql, Object... params )
+        throws SQLException
+    {
+        StreamingQuery query = executeStreamingQuery( sql, params );
+
+        return beanBuilder.stream( query.resultSet ).onClose( () ->
+        {
+            try
+            {
+                query.close();
+            }
+            catch ( SQLException ex )
+            {
+                throw new UncheckedSQLException( ex );
+            }
+        } );
+    }
+
     public ResultSetIterator<T> getIterator( ResultSet rs )
         throws SQLException
     {
         return beanBuilder.getIterator( rs );
     }
+
+    // ----------
+    // private
+    // ----------
+
+    /**
+     * @return the SQL with a limit clause of the database dialect appended, unless its trailing clause already limits the rows or the dialect
+     * is not known.
+     */
+    private String withLimit( String sql, int rowCount )
+        throws SQLException
+    {
+        if ( TRAILING_LIMIT.matcher( sql ).find() )
+        {
+            return sql;
+        }
+
+        String limit = DriverFeatures.get( conn ).getLimitClause( rowCount );
+
+        return limit == null ? sql : sql + " " + limit;
+    }
+
+    private PreparedStatement prepareBoundStatement( String sql, Object... params )
+        throws SQLException
+    {
+        PreparedStatement statement = prepareStatement( sql );
+        try
+        {
+            for ( int i = 0; i < params.length; i++ )
+            {
+                statement.setObject( i + 1, params[i] );
+            }
+        }
+        catch ( SQLException | RuntimeException ex )
+        {
+            statement.close();
+            throw ex;
+        }
+
+        return statement;
+    }
+
+    /**
+     * @param remaining distinct keys.
+     */
+    private Map<List<Object>, T> loadByKeys( List<List<Object>> remaining )
+        throws SQLException
+    {
+        Map<List<Object>, T> found = new HashMap<>();
+        int start = 0;
+        while ( start < remaining.size() )
+        {
+            int batchSize = table.getKeyBatchSize( remaining.size() - start );
+            int end = Math.min( start + batchSize, remaining.size() );
+
+            try ( PreparedStatement statement = prepareStatement( table.getSelectByKeysSql( batchSize ) ) )
+            {
+                int paramIndex = 1;
+                for ( int i = 0; i < batchSize; i++ )
+                {
+                    // Pad a short batch by repeating its last key.
+                    paramIndex = table.setPrimaryKeyValues( statement, paramIndex, remaining.get( Math.min( start + i, end - 1 ) ) );
+                }
+
+                for ( T bean : getList( statement.executeQuery() ) )
+                {
+                    found.put( table.getPrimaryKeyValues( bean ), bean );
+                }
+            }
+
+            start = end;
+        }
+
+        return found;
+    }
+
+    private T loadByKey( List<Object> values )
+        throws SQLException
+    {
+        try ( PreparedStatement statement = prepareStatement( table.getSelectByKeySql() ) )
+        {
+            table.setPrimaryKeyValues( statement, 1, values );
+
+            return getUnique( statement );
+        }
+    }
+
+    /**
+     * Closes the statement, which puts it back in the cache with its max rows restored.
+     */
+    private boolean hasRow( PreparedStatement statement )
+        throws SQLException
+    {
+        try ( PreparedStatement closing = statement )
+        {
+            closing.setMaxRows( 1 );
+            try ( ResultSet rs = closing.executeQuery() )
+            {
+                return rs.next();
+            }
+        }
+    }
+
+    private StreamingQuery executeStreamingQuery( String sql, Object... params )
+        throws SQLException
+    {
+        Connection conn = this.conn;
+        boolean autoCommit = conn.getAutoCommit();
+        if ( autoCommit )
+        {
+            conn.setAutoCommit( false );
+        }
+
+        PreparedStatement statement = null;
+        try
+        {
+            statement = statementCache.prepareStatement( conn, sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY );
+            statement.setFetchSize( streamingFetchSize );
+            for ( int i = 0; i < params.length; i++ )
+            {
+                statement.setObject( i + 1, params[i] );
+            }
+
+            return new StreamingQuery( conn, autoCommit, statement, statement.executeQuery() );
+        }
+        catch ( SQLException ex )
+        {
+            new StreamingQuery( conn, autoCommit, statement, null ).close();
+            throw ex;
+        }
+    }
+
+    // ============================================================
+    // Inner Classes
+    // ============================================================
+
+    /**
+     * Open streaming query, closing it restores what was changed on the statement and connection.
+     */
+    private static class StreamingQuery implements AutoCloseable
+    {
+        private Connection conn;
+        private boolean autoCommit;
+        private PreparedStatement statement;
+        private ResultSet resultSet;
+
+        public StreamingQuery( Connection conn, boolean autoCommit, PreparedStatement statement, ResultSet resultSet )
+        {
+            this.conn = conn;
+            this.autoCommit = autoCommit;
+            this.statement = statement;
+            this.resultSet = resultSet;
+        }
+
+        @Override
+        public void close()
+            throws SQLException
+        {
+            try
+            {
+                if ( statement != null )
+                {
+                    // Puts it back in the cache with the fetch size restored (if not already closed with its ResultSet).
+                    statement.close();
+                }
+            }
+            finally
+            {
+                if ( autoCommit )
+                {
+                    // Ends the read-only transaction the cursor needed.
+                    conn.setAutoCommit( true );
+                }
+            }
+        }
+    }
 }
@@ -23,6 +23,7 @@ package net.jextra.fauxjo;
 
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Groups a number of Home objects together into a common ConnectionSupplier.
@@ -35,6 +36,9 @@ public class HomeGroup
 
     private Map<Class<?>, Home<?>> homes;
     private Connection conn;
+    // One cache for all Homes (and their Tables) so that the same SQL is only prepared once per connection.
+    private StatementCache statementCache;
+    private boolean bulkLoadColumnInfos;
 
     // ============================================================
     // Constructors
@@ -43,6 +47,7 @@ public class HomeGroup
     public HomeGroup()
     {
         homes = new LinkedHashMap<>();
+        statementCache = new StatementCache();
     }
 
     // ============================================================
@@ -71,15 +76,120 @@ public class HomeGroup
     public void setConnection( Connection conn )
         throws SQLException
     {
+        // Statements are not cleared, re-binding to a connection used before finds them still prepared.
         this.conn = conn;
         for ( Home<?> home : homes.values() )
         {
-            home.setConnection( conn );
+            home.setConnection( conn, statementCache );
         }
+
+        if ( conn != null && bulkLoadColumnInfos )
+        {
+            loadColumnInfos();
+        }
+    }
+
+    public boolean getBulkLoadColumnInfos()
+    {
+        return bulkLoadColumnInfos;
+    }
+
+    /**
+     * If true, setting the connection loads the column meta data of the tables of this group with one round trip per schema instead of table
+     * by table. Off by default.
+     */
+    public void setBulkLoadColumnInfos( boolean bulkLoadColumnInfos )
+    {
+        this.bulkLoadColumnInfos = bulkLoadColumnInfos;
+    }
+
+    /**
+     * Fills the {@link ColumnInfoCache} for every Home in this group with one meta data round trip per schema. Schemas whose tables are all
+     * already cached are skipped and only the tables of this group are kept. Tables without an explicit schema are left to be looked up
+     * individually.
+     */
+    public void loadColumnInfos()
+        throws SQLException
+    {
+        String databaseId = ColumnInfoCache.getDatabaseId( conn );
+
+        // Key = Schema name.
+        // Value = Names of the tables of the schema that are not cached yet.
+        Map<String, Set<String>> schemaTables = new LinkedHashMap<>();
+        for ( Home<?> home : homes.values() )
+        {
+            Table<?> table = home.getTable();
+            if ( table.getSchemaName() != null && ColumnInfoCache.get( databaseId, table.getSchemaName(), table.getTableName() ) == null )
+            {
+                schemaTables.computeIfAbsent( table.getSchemaName(), k -> new HashSet<>() ).add( table.getTableName() );
+            }
+        }
+
+        for ( Map.Entry<String, Set<String>> entry : schemaTables.entrySet() )
+        {
+            ColumnInfoCache.loadSchema( conn, entry.getKey(), entry.getValue() );
+        }
+    }
+
+    public StatementCache getStatementCache()
+    {
+        return statementCache;
+    }
+
+    /**
+     * Prepares (or reuses) a plain statement, without asking for generated keys, on the connection of this group through the cache shared by
+     * all of its Homes. Closing it puts it back in the cache.
+     */
+    public PreparedStatement prepareStatement( String sql )
+        throws SQLException
+    {
+        return statementCache.prepareStatement( conn, sql );
     }
 
     public Collection<Home<?>> getHomes()
     {
         return homes.values();
     }
+
+    /**
+     * Checks the column types declared on the beans of this group against the live schema in the background. Only Homes whose Table runs
+     * off declared column types are checked.
+     *
+     * @param connectionSupplier supplies a dedicated connection for the check which is closed afterwards.
+     * @return future of the drift found, Key = full table name, Value = description of each difference. Tables without drift are omitted.
+     */
+    public CompletableFuture<Map<String, List<String>>> validateDeclaredColumnInfos( Callable<Connection> connectionSupplier, Executor executor )
+    {
+        List<Table<?>> tables = new ArrayList<>();
+        for ( Home<?> home : homes.values() )
+        {
+            tables.add( home.getTable() );
+        }
+
+        return CompletableFuture.supplyAsync( () -> {
+            Map<String, List<String>> drift = new LinkedHashMap<>();
+            try ( Connection validationConn = connectionSupplier.call() )
+            {
+                for ( Table<?> table : tables )
+                {
+                    if ( !table.hasDeclaredColumnInfos() )
+                    {
+                        continue;
+                    }
+
+                    List<String> tableDrift = table.validateDeclaredColumnInfos( validationConn );
+                    if ( !tableDrift.isEmpty() )
+                    {
+                        drift.put( table.getFullTableName(), tableDrift );
+                    }
+                }
+            }
+            catch ( Exception ex )
+            {
+                throw new CompletionException( ex );
+            }
+
+            return drift;
+        }, executor );
+    }
 }
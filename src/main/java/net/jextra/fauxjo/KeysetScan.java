@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) jextra.net.
+ *
+ * This file is part of the jextra.net software.
+ *
+ * The jextra software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * The jextra software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with the jextra software; if not, write to the Free
+ * Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA
+ * 02111-1307 USA.
+ */
+
+package net.jextra.fauxjo;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+ * Iterates over all rows of a table (optionally filtered) in primary key order, one page at a time. Each page after the first selects the
+ * rows whose key is greater than the last key seen, so every page costs the same no matter how deep into the table the scan is (unlike
+ * OFFSET). The scan can be resumed later from {@link #getCheckpoint()}.
+ */
+public class KeysetScan<T> implements Iterator<T>, Iterable<T>
+{
+    // ============================================================
+    // Fields
+    // ============================================================
+
+    private Home<T> home;
+    private int pageSize;
+    private String filter;
+    private Object[] filterParams;
+    private List<Object> lastKey;
+    private List<T> page;
+    private int pageIndex;
+    private boolean lastPage;
+
+    // ============================================================
+    // Constructors
+    // ============================================================
+
+    public KeysetScan( Home<T> home, int pageSize, String filter, Object... filterParams )
+    {
+        if ( pageSize < 1 )
+        {
+            throw new IllegalArgumentException( "Page size must be at least 1" );
+        }
+
+        this.home = home;
+        this.pageSize = pageSize;
+        this.filter = filter;
+        this.filterParams = filterParams == null ? new Object[0] : filterParams;
+        page = Collections.emptyList();
+    }
+
+    // ============================================================
+    // Methods
+    // ============================================================
+
+    // ----------
+    // public
+    // ----------
+
+    /**
+     * Resumes a scan after the given key (as returned by {@link #getCheckpoint()}, or a single value/Object[] like for
+     * {@link Home#findByKey}). Must be called before iterating.
+     */
+    public KeysetScan<T> startAfter( Object key )
+        throws SQLException
+    {
+        lastKey = key == null ? null : home.getTable().toPrimaryKeyValues( key );
+
+        return this;
+    }
+
+    /**
+     * @return primary key values of the last bean returned, or null if none yet.
+     */
+    public List<Object> getCheckpoint()
+    {
+        return lastKey;
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        if ( pageIndex < page.size() )
+        {
+            return true;
+        }
+        if ( lastPage )
+        {
+            return false;
+        }
+
+        try
+        {
+            page = readPage();
+            pageIndex = 0;
+            lastPage = page.size() < pageSize;
+        }
+        catch ( SQLException ex )
+        {
+            throw new UncheckedSQLException( ex );
+        }
+
+        return !page.isEmpty();
+    }
+
+    @Override
+    public T next()
+    {
+        if ( !hasNext() )
+        {
+            throw new NoSuchElementException();
+        }
+
+        T bean = page.get( pageIndex++ );
+        try
+        {
+            lastKey = home.getTable().getPrimaryKeyValues( bean );
+        }
+        catch ( SQLException ex )
+        {
+            throw new UncheckedSQLException( ex );
+        }
+
+        return bean;
+    }
+
+    @Override
+    public Iterator<T> iterator()
+    {
+        return this;
+    }
+
+    // ----------
+    // private
+    // ----------
+
+    private List<T> readPage()
+        throws SQLException
+    {
+        Table<T> table = home.getTable();
+        try ( PreparedStatement statement = home.prepareStatement( table.getScanSql( filter, lastKey != null, pageSize ) ) )
+        {
+            int paramIndex = 1;
+            for ( Object param : filterParams )
+            {
+                statement.setObject( paramIndex++, param );
+            }
+            if ( lastKey != null )
+            {
+                table.setScanKeyValues( statement, paramIndex, lastKey );
+            }
+
+            // The SQL limits the page where the dialect is known, max rows covers the others. Closing the statement puts it back in the
+            // cache without the limit.
+            statement.setMaxRows( pageSize );
+
+            return home.getList( statement.executeQuery() );
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) jextra.net.
+ *
+ * This file is part of the jextra.net software.
+ *
+ * The jextra software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * The jextra software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with the jextra software; if not, write to the Free
+ * Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA
+ * 02111-1307 USA.
+ */
+
+package net.jextra.fauxjo;
+
+import java.sql.*;
+
+/**
+ * Bean property type for heavy columns (JSON, XML, CLOB, BLOB, ...) that are only decoded when first used. {@link BeanBuilder} fills it with
+ * the raw value returned by the driver and the {@link LazyCodec} of the column; the raw value is decoded on the first call to {@link #get()}
+ * and then released.
+ * <p>
+ * Some drivers only keep Clob/Blob values readable while the transaction (or ResultSet) they came from is open, so call get() before that if
+ * the column is read as such.
+ */
+public class Lazy<T>
+{
+    // ============================================================
+    // Fields
+    // ============================================================
+
+    private Object raw;
+    private LazyCodec<T> codec;
+    private T value;
+    private volatile boolean decoded;
+
+    // ============================================================
+    // Constructors
+    // ============================================================
+
+    public Lazy( Object raw, LazyCodec<T> codec )
+    {
+        this.raw = raw;
+        this.codec = codec;
+    }
+
+    // ============================================================
+    // Methods
+    // ============================================================
+
+    // ----------
+    // public
+    // ----------
+
+    /**
+     * @return already decoded holder of the given value, e.g. for a bean that is about to be inserted.
+     */
+    public static <T> Lazy<T> of( T value )
+    {
+        Lazy<T> lazy = new Lazy<>( null, null );
+        lazy.value = value;
+        lazy.decoded = true;
+
+        return lazy;
+    }
+
+    public T get()
+    {
+        if ( !decoded )
+        {
+            synchronized ( this )
+            {
+                if ( !decoded )
+                {
+                    try
+                    {
+                        value = codec.decode( raw );
+                    }
+                    catch ( SQLException ex )
+                    {
+                        throw new UncheckedSQLException( ex );
+                    }
+                    raw = null;
+                    codec = null;
+                    decoded = true;
+                }
+            }
+        }
+
+        return value;
+    }
+
+    public boolean isDecoded()
+    {
+        return decoded;
+    }
+
+    /**
+     * @return the value as returned by the driver, or null once decoded.
+     */
+    public synchronized Object getRaw()
+    {
+        return raw;
+    }
+
+    @Override
+    public String toString()
+    {
+        return decoded ? String.valueOf( value ) : "Lazy[not decoded]";
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) jextra.net.
+ *
+ * This file is part of the jextra.net software.
+ *
+ * The jextra software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * The jextra software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with the jextra software; if not, write to the Free
+ * Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA
+ * 02111-1307 USA.
+ */
+
+package net.jextra.fauxjo;
+
+import java.nio.charset.*;
+import java.sql.*;
+import net.jextra.fauxjo.coercer.*;
+
+/**
+ * Decodes the raw driver value of a {@link Lazy} column.
+ */
+public interface LazyCodec<T>
+{
+    // ============================================================
+    // Methods
+    // ============================================================
+
+    // ----------
+    // public
+    // ----------
+
+    /**
+     * @param raw value as returned by ResultSet.getObject, never null.
+     */
+    T decode( Object raw )
+        throws SQLException;
+
+    /**
+     * @return codec that reads Clob, Blob and SQLXML values into a String/byte[] and then coerces the result to the target class.
+     */
+    static <T> LazyCodec<T> coercing( Class<T> targetClass, Coercer coercer )
+    {
+        return new CoercingCodec<>( targetClass, coercer );
+    }
+
+    // ============================================================
+    // Inner Classes
+    // ============================================================
+
+    class CoercingCodec<T> implements LazyCodec<T>
+    {
+        private Class<T> targetClass;
+        private Coercer coercer;
+
+        public CoercingCodec( Class<T> targetClass, Coercer coercer )
+        {
+            this.targetClass = targetClass;
+            this.coercer = coercer;
+        }
+
+        @Override
+        public T decode( Object raw )
+            throws SQLException
+        {
+            Object value = raw;
+            if ( raw instanceof Clob )
+            {
+                Clob clob = (Clob) raw;
+                value = clob.getSubString( 1, (int) clob.length() );
+            }
+            else if ( raw instanceof Blob )
+            {
+                Blob blob = (Blob) raw;
+                value = blob.getBytes( 1, (int) blob.length() );
+            }
+            else if ( raw instanceof SQLXML )
+            {
+                value = ( (SQLXML) raw ).getString();
+            }
+
+            if ( value instanceof byte[] && targetClass == String.class )
+            {
+                return targetClass.cast( new String( (byte[]) value, StandardCharsets.UTF_8 ) );
+            }
+
+            return targetClass.cast( coercer.convertTo( value, targetClass ) );
+        }
+    }
+}
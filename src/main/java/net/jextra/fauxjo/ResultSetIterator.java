@@ -29,7 +29,7 @@ import java.util.*;
  * Fauxjo bean. This is used primarily to iterate over a large number records without having to
  * load them all into memory.
  */
-public class ResultSetIterator<T> implements Iterator<T>, Iterable<T>
+public class ResultSetIterator<T> implements Iterator<T>, Iterable<T>, AutoCloseable
 {
     // ============================================================
     // Fields
@@ -38,6 +38,10 @@ public class ResultSetIterator<T> implements Iterator<T>, Iterable<T>
     private Builder<T> builder;
     private ResultSet resultSet;
     private boolean hasNext;
+    // True once the current row was built, the ResultSet is only moved on when the next row is asked for so that stream properties of the
+    // last bean stay readable until then.
+    private boolean rowUsed;
+    private AutoCloseable closeAction;
 
     // ============================================================
     // Constructors
@@ -70,25 +74,38 @@ public class ResultSetIterator<T> implements Iterator<T>, Iterable<T>
     @Override
     public boolean hasNext()
     {
+        if ( rowUsed )
+        {
+            rowUsed = false;
+            try
+            {
+                hasNext = resultSet.next();
+                if ( !hasNext )
+                {
+                    close();
+                }
+            }
+            catch ( Exception ex )
+            {
+                throw new RuntimeException( ex );
+            }
+        }
+
         return hasNext;
     }
 
     @Override
     public T next()
     {
-        if ( !hasNext )
+        if ( !hasNext() )
         {
             return null;
         }
 
         try
         {
-            T bean = builder.buildBean( resultSet );
-            hasNext = resultSet.next();
-            if ( !hasNext )
-            {
-                close();
-            }
+            T bean = builder.buildStreamingBean( resultSet );
+            rowUsed = true;
 
             return bean;
         }
@@ -104,14 +121,32 @@ public class ResultSetIterator<T> implements Iterator<T>, Iterable<T>
         throw new UnsupportedOperationException( "Remove is not supported for " + "ResultSetIterators." );
     }
 
+    /**
+     * @param closeAction run once the ResultSet is closed (e.g. to restore connection settings changed for the query).
+     */
+    public ResultSetIterator<T> onClose( AutoCloseable closeAction )
+    {
+        this.closeAction = closeAction;
+
+        return this;
+    }
+
+    @Override
     public void close()
         throws SQLException
     {
         if ( resultSet != null )
         {
-            resultSet.getStatement().close();
-            resultSet.close();
-            resultSet = null;
+            try
+            {
+                resultSet.getStatement().close();
+                resultSet.close();
+                resultSet = null;
+            }
+            finally
+            {
+                runCloseAction();
+            }
         }
     }
 
@@ -121,6 +156,34 @@ public class ResultSetIterator<T> implements Iterator<T>, Iterable<T>
         return this;
     }
 
+    // ----------
+    // private
+    // ----------
+
+    private void runCloseAction()
+        throws SQLException
+    {
+        AutoCloseable action = closeAction;
+        closeAction = null;
+        if ( action == null )
+        {
+            return;
+        }
+
+        try
+        {
+            action.close();
+        }
+        catch ( SQLException ex )
+        {
+            throw ex;
+        }
+        catch ( Exception ex )
+        {
+            throw new FauxjoException( ex );
+        }
+    }
+
     // ============================================================
     // Inner Classes
     // ============================================================
@@ -129,5 +192,15 @@ public class ResultSetIterator<T> implements Iterator<T>, Iterable<T>
     {
         T buildBean( ResultSet rs )
             throws SQLException;
+
+        /**
+         * Builds the bean of the current row while iterating. Values may read straight from the row (e.g. streams), so they are only valid
+         * until the iterator moves on.
+         */
+        default T buildStreamingBean( ResultSet rs )
+            throws SQLException
+        {
+            return buildBean( rs );
+        }
     }
 }
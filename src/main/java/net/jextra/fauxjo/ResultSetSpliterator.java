@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) jextra.net.
+ *
+ * This file is part of the jextra.net software.
+ *
+ * The jextra software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * The jextra software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with the jextra software; if not, write to the Free
+ * Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA
+ * 02111-1307 USA.
+ */
+
+package net.jextra.fauxjo;
+
+import java.sql.*;
+import java.util.*;
+import java.util.function.*;
+
+/**
+ * Spliterator of the beans of a {@link ResultSet}. The ResultSet itself is read by one thread, but {@link #trySplit()} hands out batches of
+ * already built beans so that parallel streams can process them on other threads while reading continues.
+ */
+public class ResultSetSpliterator<T> implements Spliterator<T>
+{
+    // ============================================================
+    // Fields
+    // ============================================================
+
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+
+    private ResultSet resultSet;
+    private ResultSetIterator.Builder<T> builder;
+    private int batchSize;
+    private boolean exhausted;
+
+    // ============================================================
+    // Constructors
+    // ============================================================
+
+    public ResultSetSpliterator( ResultSet resultSet, ResultSetIterator.Builder<T> builder, int batchSize )
+    {
+        this.resultSet = resultSet;
+        this.builder = builder;
+        this.batchSize = batchSize;
+    }
+
+    // ============================================================
+    // Methods
+    // ============================================================
+
+    // ----------
+    // public
+    // ----------
+
+    @Override
+    public synchronized boolean tryAdvance( Consumer<? super T> action )
+    {
+        T bean = readBean();
+        if ( bean == null )
+        {
+            return false;
+        }
+
+        action.accept( bean );
+
+        return true;
+    }
+
+    @Override
+    public synchronized Spliterator<T> trySplit()
+    {
+        List<T> batch = new ArrayList<>( batchSize );
+        T bean;
+        while ( batch.size() < batchSize && ( bean = readBean() ) != null )
+        {
+            batch.add( bean );
+        }
+
+        if ( batch.isEmpty() )
+        {
+            return null;
+        }
+
+        return Spliterators.spliterator( batch, characteristics() );
+    }
+
+    @Override
+    public long estimateSize()
+    {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics()
+    {
+        return ORDERED | NONNULL;
+    }
+
+    /**
+     * Closes the ResultSet and its statement.
+     */
+    public synchronized void close()
+        throws SQLException
+    {
+        exhausted = true;
+        if ( resultSet != null )
+        {
+            Statement statement = resultSet.getStatement();
+            resultSet.close();
+            if ( statement != null )
+            {
+                statement.close();
+            }
+            resultSet = null;
+        }
+    }
+
+    // ----------
+    // private
+    // ----------
+
+    private T readBean()
+    {
+        if ( exhausted )
+        {
+            return null;
+        }
+
+        try
+        {
+            if ( !resultSet.next() )
+            {
+                close();
+                return null;
+            }
+
+            return builder.buildBean( resultSet );
+        }
+        catch ( SQLException ex )
+        {
+            throw new UncheckedSQLException( ex );
+        }
+    }
+}
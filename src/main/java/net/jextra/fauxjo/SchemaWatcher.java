@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) jextra.net.
+ *
+ * This file is part of the jextra.net software.
+ *
+ * The jextra software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * The jextra software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with the jextra software; if not, write to the Free
+ * Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA
+ * 02111-1307 USA.
+ */
+
+package net.jextra.fauxjo;
+
+import java.io.*;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Periodically fingerprints the columns of the watched tables on a background connection. When the columns of a table change (e.g. after an
+ * online migration) the new column infos are swapped into the {@link ColumnInfoCache}, which makes every {@link Table} of that table rebuild
+ * its SQL and drop its stale cached statements on next use. Calls already in progress are not affected.
+ */
+public class SchemaWatcher implements Closeable
+{
+    // ============================================================
+    // Fields
+    // ============================================================
+
+    private Callable<Connection> connectionSupplier;
+    private long period;
+    private TimeUnit unit;
+    private Set<Table<?>> tables;
+    private Listener listener;
+    private ScheduledExecutorService executor;
+
+    // ============================================================
+    // Constructors
+    // ============================================================
+
+    /**
+     * @param connectionSupplier supplies the background connection for each check, it is closed after the check.
+     */
+    public SchemaWatcher( Callable<Connection> connectionSupplier, long period, TimeUnit unit )
+    {
+        this.connectionSupplier = connectionSupplier;
+        this.period = period;
+        this.unit = unit;
+        tables = new CopyOnWriteArraySet<>();
+    }
+
+    // ============================================================
+    // Methods
+    // ============================================================
+
+    // ----------
+    // public
+    // ----------
+
+    public Listener getListener()
+    {
+        return listener;
+    }
+
+    public void setListener( Listener listener )
+    {
+        this.listener = listener;
+    }
+
+    public void watch( Table<?> table )
+    {
+        tables.add( table );
+    }
+
+    public void watch( HomeGroup homeGroup )
+    {
+        for ( Home<?> home : homeGroup.getHomes() )
+        {
+            watch( home.getTable() );
+        }
+    }
+
+    public void unwatch( Table<?> table )
+    {
+        tables.remove( table );
+    }
+
+    public synchronized void start()
+    {
+        if ( executor != null )
+        {
+            return;
+        }
+
+        executor = Executors.newSingleThreadScheduledExecutor( runnable -> {
+            Thread thread = new Thread( runnable, "fauxjo-schema-watcher" );
+            thread.setDaemon( true );
+            return thread;
+        } );
+        executor.scheduleWithFixedDelay( this::checkQuietly, period, period, unit );
+    }
+
+    @Override
+    public synchronized void close()
+    {
+        if ( executor != null )
+        {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Checks all watched tables once, right now, on the calling thread.
+     *
+     * @return Tables whose columns changed.
+     */
+    public List<Table<?>> check()
+        throws SQLException
+    {
+        List<Table<?>> changed = new ArrayList<>();
+
+        try ( Connection conn = connectionSupplier.call() )
+        {
+            for ( Table<?> table : tables )
+            {
+                if ( table.refreshColumnInfos( conn ) )
+                {
+                    changed.add( table );
+                    if ( listener != null )
+                    {
+                        listener.schemaChanged( table );
+                    }
+                }
+            }
+        }
+        catch ( SQLException ex )
+        {
+            throw ex;
+        }
+        catch ( Exception ex )
+        {
+            throw new FauxjoException( ex );
+        }
+
+        return changed;
+    }
+
+    // ----------
+    // private
+    // ----------
+
+    private void checkQuietly()
+    {
+        try
+        {
+            check();
+        }
+        catch ( Exception ex )
+        {
+            // Never let an exception cancel the periodic check.
+            if ( listener != null )
+            {
+                listener.checkFailed( ex );
+            }
+        }
+    }
+
+    // ============================================================
+    // Inner Classes
+    // ============================================================
+
+    public interface Listener
+    {
+        void schemaChanged( Table<?> table );
+
+        default void checkFailed( Exception ex )
+        {
+        }
+    }
+}
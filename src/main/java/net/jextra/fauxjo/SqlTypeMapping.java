@@ -55,14 +55,14 @@ public class SqlTypeMapping extends HashMap<Integer, Class<?>>
         put( java.sql.Types.NVARCHAR, String.class );
         put( java.sql.Types.CHAR, String.class );
         put( java.sql.Types.CLOB, String.class );
-        put( java.sql.Types.BINARY, String.class );
+        put( java.sql.Types.BINARY, byte[].class );
         put( java.sql.Types.LONGNVARCHAR, String.class );
-        put( java.sql.Types.LONGVARBINARY, String.class );
+        put( java.sql.Types.LONGVARBINARY, byte[].class );
         put( java.sql.Types.LONGVARCHAR, String.class );
         put( java.sql.Types.NCHAR, String.class );
         put( java.sql.Types.NCLOB, String.class );
         put( java.sql.Types.SQLXML, String.class );
-        put( java.sql.Types.VARBINARY, String.class );
+        put( java.sql.Types.VARBINARY, byte[].class );
         put( java.sql.Types.VARCHAR, String.class );
         put( java.sql.Types.TIME, Time.class );
         put( java.sql.Types.TIME_WITH_TIMEZONE, Time.class );
@@ -21,17 +21,51 @@
 
 package net.jextra.fauxjo;
 
+import java.lang.ref.*;
 import java.lang.reflect.*;
 import java.sql.*;
 import java.util.*;
 
+/**
+ * Caches PreparedStatements and CallableStatements per connection so that the same SQL is only prepared once.
+ * <p>
+ * The number of statements open per connection, idle or in use, is bounded. When full, the least recently used idle statement is closed to
+ * keep the number of server-side statement handles bounded on long-lived (e.g. pooled) connections. If more statements than the maximum are
+ * in use, the oldest ones are taken back and closed; those are usually statements that were never closed, so do not keep more statements
+ * than the maximum open at once.
+ * <p>
+ * There is no per-thread state, the cache can be used and cleared from any thread (platform or virtual). Each prepare call hands out a
+ * statement that nobody else is using: it is taken out of the cache until it is closed, which puts it back for the next caller (closing
+ * never really closes a cached statement). A statement that is dropped without being closed is taken back once it is garbage collected.
+ * <p>
+ * Statements are keyed by, and prepared on, the connection they are asked for. Statements are not cleared when a Home is re-bound to a
+ * connection, only evicted when the cache is full or explicitly cleared. The statements of connections that have been closed are dropped
+ * whenever a new connection is first used.
+ * <p>
+ * Connection pools hand out a different logical wrapper on every borrow. Setting an {@link UnwrappingKeyResolver} (or another
+ * {@link ConnectionKeyResolver}) keys and prepares statements on the physical connection instead, which keeps them warm across borrow/return.
+ * That bypasses the pool's wrapper for the statements, so the pool does not see their work (e.g. to roll back uncommitted work when the
+ * connection is returned). Only use it if every borrower commits or rolls back its own work.
+ */
 public class StatementCache
 {
     // ============================================================
     // Fields
     // ============================================================
 
-    private ThreadLocal<Map<Connection, PerConnectionCache>> cache;
+    public static final int UNBOUNDED = -1;
+
+    private static volatile int defaultMaxStatements = 256;
+    // Null = statements are cached under the connection they are asked for.
+    private static volatile ConnectionKeyResolver defaultKeyResolver;
+
+    // Key = Connection found by the key resolver.
+    private Map<Connection, PerConnectionCache> cache;
+    private ConnectionKeyResolver keyResolver;
+
+    // Overrides of the default maximum (null = default) for all connections and for specific connections.
+    private Integer maxStatements;
+    private Map<Connection, Integer> connMaxStatements;
 
     // ============================================================
     // Constructors
@@ -39,7 +73,9 @@ public class StatementCache
 
     public StatementCache()
     {
-        cache = new ThreadLocal<>();
+        // Not weak, the cached statements reference their connection. Closed connections are swept instead.
+        cache = new IdentityHashMap<>();
+        connMaxStatements = Collections.synchronizedMap( new WeakHashMap<>() );
     }
 
     // ============================================================
@@ -50,146 +86,186 @@ public class StatementCache
     // public
     // ----------
 
-    public PreparedStatement prepareStatement( Connection conn, String sql, boolean supportsGeneratedKeys )
-        throws SQLException
+    public static int getDefaultMaxStatements()
     {
-        PerConnectionCache cc = getConnCache( conn );
-        PreparedStatement statement = cc.getPreparedStatement( sql );
-        if ( statement == null || statement.isClosed() )
-        {
-            if ( supportsGeneratedKeys && SqlInspector.isInsertStatement( sql ) )
-            {
-                statement = conn.prepareStatement( sql, Statement.RETURN_GENERATED_KEYS );
-            }
-            else
-            {
-                statement = conn.prepareStatement( sql );
-            }
+        return defaultMaxStatements;
+    }
 
-            statement = cc.setPreparedStatement( sql, statement );
-        }
+    /**
+     * Global maximum number of statements (and, separately, calls) cached per connection by every StatementCache that does not override it.
+     * {@link #UNBOUNDED} disables eviction and zero disables caching (statements are closed when their user closes them). Idle statements
+     * are evicted first; only when more than the maximum are in use is the oldest one in use taken back and closed.
+     */
+    public static void setDefaultMaxStatements( int max )
+    {
+        defaultMaxStatements = checkMax( max );
+    }
 
-        return statement;
+    public static ConnectionKeyResolver getDefaultKeyResolver()
+    {
+        return defaultKeyResolver;
     }
 
-    public PreparedStatement prepareStatement( Connection conn, String sql, int resultSetType, int resultSetConcurrency )
-        throws SQLException
+    /**
+     * Resolver used by every StatementCache that does not have its own, null (the default) to cache statements under the connection they are
+     * asked for.
+     */
+    public static void setDefaultKeyResolver( ConnectionKeyResolver resolver )
     {
-        PerConnectionCache cc = getConnCache( conn );
-        PreparedStatement statement = cc.getPreparedStatement( sql );
-        if ( statement == null || statement.isClosed() )
-        {
-            statement = conn.prepareStatement( sql, resultSetType, resultSetConcurrency );
+        defaultKeyResolver = resolver;
+    }
 
-            statement = cc.setPreparedStatement( sql, statement );
-        }
+    public ConnectionKeyResolver getKeyResolver()
+    {
+        return keyResolver == null ? defaultKeyResolver : keyResolver;
+    }
 
-        return statement;
+    public void setKeyResolver( ConnectionKeyResolver keyResolver )
+    {
+        this.keyResolver = keyResolver;
     }
 
-    public PreparedStatement prepareStatement( Connection conn, String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability )
+    /**
+     * @return connection that statements for the given connection are cached under and prepared on: the physical connection behind a pooled
+     * connection if a key resolver is set, else the connection itself.
+     */
+    public Connection getPhysicalConnection( Connection conn )
         throws SQLException
     {
-        PerConnectionCache cc = getConnCache( conn );
-        PreparedStatement statement = cc.getPreparedStatement( sql );
-        if ( statement == null || statement.isClosed() )
+        ConnectionKeyResolver resolver = getKeyResolver();
+        if ( resolver == null )
         {
-            statement = conn.prepareStatement( sql, resultSetType, resultSetConcurrency, resultSetHoldability );
-
-            statement = cc.setPreparedStatement( sql, statement );
+            return conn;
         }
 
-        return statement;
+        Connection physical = resolver.resolve( conn );
+
+        return physical == null ? conn : physical;
     }
 
-    public PreparedStatement prepareStatement( Connection conn, String sql, int autoGeneratedKeys )
-        throws SQLException
+    public int getMaxStatements()
     {
-        PerConnectionCache cc = getConnCache( conn );
-        PreparedStatement statement = cc.getPreparedStatement( sql );
-        if ( statement == null || statement.isClosed() )
-        {
-            statement = conn.prepareStatement( sql, autoGeneratedKeys );
+        return maxStatements == null ? defaultMaxStatements : maxStatements;
+    }
 
-            statement = cc.setPreparedStatement( sql, statement );
-        }
+    /**
+     * Maximum number of statements cached per connection by this StatementCache. Takes effect for connections first used afterwards.
+     */
+    public void setMaxStatements( int max )
+    {
+        maxStatements = checkMax( max );
+    }
+
+    public int getMaxStatements( Connection conn )
+        throws SQLException
+    {
+        Integer max = connMaxStatements.get( getPhysicalConnection( conn ) );
 
-        return statement;
+        return max == null ? getMaxStatements() : max;
     }
 
-    public PreparedStatement prepareStatement( Connection conn, String sql, int[] columnIndexes )
+    /**
+     * Maximum number of statements cached for a specific connection. Excess statements are closed immediately.
+     */
+    public void setMaxStatements( Connection conn, int max )
         throws SQLException
     {
-        PerConnectionCache cc = getConnCache( conn );
-        PreparedStatement statement = cc.getPreparedStatement( sql );
-        if ( statement == null || statement.isClosed() )
-        {
-            statement = conn.prepareStatement( sql, columnIndexes );
+        Connection physical = getPhysicalConnection( conn );
+        connMaxStatements.put( physical, checkMax( max ) );
 
-            statement = cc.setPreparedStatement( sql, statement );
+        PerConnectionCache cc = findConnCache( physical );
+        if ( cc != null )
+        {
+            cc.setMaxSize( max );
         }
+    }
 
-        return statement;
+    public PreparedStatement prepareStatement( Connection conn, String sql )
+        throws SQLException
+    {
+        return lease( conn, sql, false, physical -> physical.prepareStatement( sql ) );
     }
 
-    public PreparedStatement prepareStatement( Connection conn, String sql, String[] columnNames )
+    public PreparedStatement prepareStatement( Connection conn, String sql, boolean supportsGeneratedKeys )
         throws SQLException
     {
-        PerConnectionCache cc = getConnCache( conn );
-        PreparedStatement statement = cc.getPreparedStatement( sql );
-        if ( statement == null || statement.isClosed() )
+        return lease( conn, sql, false, physical ->
         {
-            statement = conn.prepareStatement( sql, columnNames );
+            if ( supportsGeneratedKeys && SqlInspector.isInsertStatement( sql ) )
+            {
+                return physical.prepareStatement( sql, Statement.RETURN_GENERATED_KEYS );
+            }
 
-            statement = cc.setPreparedStatement( sql, statement );
-        }
+            return physical.prepareStatement( sql );
+        } );
+    }
 
-        return statement;
+    public PreparedStatement prepareStatement( Connection conn, String sql, int resultSetType, int resultSetConcurrency )
+        throws SQLException
+    {
+        return lease( conn, sql, false, physical -> physical.prepareStatement( sql, resultSetType, resultSetConcurrency ) );
     }
 
-    public CallableStatement prepareCall( Connection conn, String sql )
+    public PreparedStatement prepareStatement( Connection conn, String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability )
         throws SQLException
     {
-        PerConnectionCache cc = getConnCache( conn );
-        CallableStatement call = cc.getPreparedCall( sql );
-        if ( call == null || call.isClosed() )
-        {
-            call = conn.prepareCall( sql );
+        return lease( conn, sql, false,
+            physical -> physical.prepareStatement( sql, resultSetType, resultSetConcurrency, resultSetHoldability ) );
+    }
 
-            call = cc.setPreparedCall( sql, call );
-        }
+    public PreparedStatement prepareStatement( Connection conn, String sql, int autoGeneratedKeys )
+        throws SQLException
+    {
+        return lease( conn, sql, false, physical -> physical.prepareStatement( sql, autoGeneratedKeys ) );
+    }
 
-        return call;
+    public PreparedStatement prepareStatement( Connection conn, String sql, int[] columnIndexes )
+        throws SQLException
+    {
+        return lease( conn, sql, false, physical -> physical.prepareStatement( sql, columnIndexes ) );
     }
 
-    public CallableStatement prepareCall( Connection conn, String sql, int resultSetType, int resultSetConcurrenc )
+    public PreparedStatement prepareStatement( Connection conn, String sql, String[] columnNames )
         throws SQLException
     {
-        PerConnectionCache cc = getConnCache( conn );
-        CallableStatement call = cc.getPreparedCall( sql );
-        if ( call == null || call.isClosed() )
-        {
-            call = conn.prepareCall( sql );
+        return lease( conn, sql, false, physical -> physical.prepareStatement( sql, columnNames ) );
+    }
 
-            call = cc.setPreparedCall( sql, call );
-        }
+    public CallableStatement prepareCall( Connection conn, String sql )
+        throws SQLException
+    {
+        return (CallableStatement) lease( conn, sql, true, physical -> physical.prepareCall( sql ) );
+    }
 
-        return call;
+    public CallableStatement prepareCall( Connection conn, String sql, int resultSetType, int resultSetConcurrency )
+        throws SQLException
+    {
+        return (CallableStatement) lease( conn, sql, true, physical -> physical.prepareCall( sql, resultSetType, resultSetConcurrency ) );
     }
 
     public CallableStatement prepareCall( Connection conn, String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability )
         throws SQLException
     {
-        PerConnectionCache cc = getConnCache( conn );
-        CallableStatement call = cc.getPreparedCall( sql );
-        if ( call == null || call.isClosed() )
-        {
-            call = conn.prepareCall( sql, resultSetType, resultSetConcurrency, resultSetHoldability );
+        return (CallableStatement) lease( conn, sql, true,
+            physical -> physical.prepareCall( sql, resultSetType, resultSetConcurrency, resultSetHoldability ) );
+    }
 
-            call = cc.setPreparedCall( sql, call );
+    /**
+     * Closes and removes the idle statements (and calls) of the given SQL. Statements of the SQL that are in use are left alone.
+     *
+     * @return true if a statement was actually removed.
+     */
+    public boolean remove( Connection conn, String sql )
+        throws SQLException
+    {
+        if ( conn == null )
+        {
+            return false;
         }
 
-        return call;
+        PerConnectionCache cc = findConnCache( getPhysicalConnection( conn ) );
+
+        return cc != null && cc.remove( sql );
     }
 
     public boolean clear( Connection conn )
@@ -200,44 +276,45 @@ public class StatementCache
             return false;
         }
 
-        Map<Connection, PerConnectionCache> map = cache.get();
-        if ( map == null )
+        boolean workDone = false;
+        PerConnectionCache cc;
+        Connection physical = getPhysicalConnection( conn );
+        synchronized ( cache )
         {
-            return false;
+            cc = cache.remove( physical );
         }
-
-        boolean workDone = false;
-        PerConnectionCache cc = map.get( conn );
         if ( cc != null )
         {
             workDone = cc.clear();
-            map.remove( conn );
         }
 
         return workDone;
     }
 
     /**
-     * Closes and removes all PreparedStatements and PreparedCalls for the active Thread.
+     * Closes and removes all PreparedStatements and PreparedCalls of all connections, no matter which thread prepared them. Statements in use
+     * are closed once they are closed by their user.
      *
      * @return true if any actual work was done and false if there was nothing to remove (most likely already closed).
      */
     public boolean clear()
         throws SQLException
     {
+        List<PerConnectionCache> ccs;
+        synchronized ( cache )
+        {
+            ccs = new ArrayList<>( cache.values() );
+            cache.clear();
+        }
+
         boolean workDone = false;
-        Map<Connection, PerConnectionCache> map = cache.get();
-        if ( map != null )
+        for ( PerConnectionCache cc : ccs )
         {
-            for ( PerConnectionCache cc : map.values() )
+            if ( cc.clear() )
             {
-                if ( cc.clear() )
-                {
-                    workDone = true;
-                }
+                workDone = true;
             }
         }
-        cache.remove();
 
         return workDone;
     }
@@ -246,179 +323,646 @@ public class StatementCache
     // private
     // ----------
 
-    private PerConnectionCache getConnCache( Connection conn )
+    private static int checkMax( int max )
+    {
+        if ( max < UNBOUNDED )
+        {
+            throw new IllegalArgumentException( "The maximum number of cached statements must be at least zero, or UNBOUNDED." );
+        }
+
+        return max;
+    }
+
+    private PreparedStatement lease( Connection conn, String sql, boolean call, StatementPreparer preparer )
+        throws SQLException
     {
-        Map<Connection, PerConnectionCache> map = cache.get();
-        if ( map == null )
+        Connection physical = getPhysicalConnection( conn );
+
+        return getConnCache( physical ).lease( physical, sql, call, preparer );
+    }
+
+    private PerConnectionCache findConnCache( Connection physical )
+    {
+        synchronized ( cache )
         {
-            map = new WeakHashMap<>();
-            cache.set( map );
+            return cache.get( physical );
         }
+    }
 
-        PerConnectionCache cc = map.get( conn );
-        if ( cc == null )
+    private PerConnectionCache getConnCache( Connection physical )
+        throws SQLException
+    {
+        PerConnectionCache cc;
+        List<Connection> known;
+        synchronized ( cache )
         {
-            cc = new PerConnectionCache();
-            map.put( conn, cc );
+            cc = cache.get( physical );
+            if ( cc != null )
+            {
+                return cc;
+            }
+
+            Integer max = connMaxStatements.get( physical );
+            cc = new PerConnectionCache( max == null ? getMaxStatements() : max );
+            known = new ArrayList<>( cache.keySet() );
+            cache.put( physical, cc );
         }
 
+        removeClosedConnections( known );
+
         return cc;
     }
 
+    /**
+     * Drops the statements of the given connections that have been closed, else retired (e.g. pooled) connections would be held forever.
+     */
+    private void removeClosedConnections( List<Connection> conns )
+    {
+        for ( Connection conn : conns )
+        {
+            try
+            {
+                if ( !conn.isClosed() )
+                {
+                    continue;
+                }
+            }
+            catch ( SQLException ex )
+            {
+                // Treat as closed.
+            }
+
+            PerConnectionCache cc;
+            synchronized ( cache )
+            {
+                cc = cache.remove( conn );
+            }
+            if ( cc != null )
+            {
+                try
+                {
+                    cc.clear();
+                }
+                catch ( SQLException ex )
+                {
+                    // The connection is gone, so are its statements.
+                }
+            }
+        }
+    }
+
     // ============================================================
     // Inner Classes
     // ============================================================
 
     /**
-     * Block from actually doing close.
-     * Wrap ResultSet in a WrapperResultSet so that getStatement method can return proxy Statement vs default non-wrapped Statement.
+     * Finds the key under which statements of a connection are cached, normally the physical connection behind a pooled connection.
      */
-    public static class WrappedPreparedStatement implements InvocationHandler
+    public interface ConnectionKeyResolver
     {
-        private PreparedStatement statement;
+        Connection resolve( Connection conn )
+            throws SQLException;
+    }
 
+    /**
+     * Uses {@link Connection#unwrap} to find the driver's connection. Works with pools whose wrappers unwrap to the delegate (e.g. HikariCP).
+     * Pools whose wrappers unwrap to themselves need their own resolver. See the class comment for what the pool no longer sees.
+     */
+    public static class UnwrappingKeyResolver implements ConnectionKeyResolver
+    {
+        @Override
+        public Connection resolve( Connection conn )
+            throws SQLException
+        {
+            if ( conn.isWrapperFor( Connection.class ) )
+            {
+                return conn.unwrap( Connection.class );
+            }
+
+            return conn;
+        }
+    }
+
+    /**
+     * @deprecated cached statements are {@link CachedPreparedStatement}s now. Kept as one (and as the old proxy handler) for source
+     * compatibility.
+     */
+    @Deprecated
+    public static class WrappedPreparedStatement extends CachedPreparedStatement implements InvocationHandler
+    {
         public WrappedPreparedStatement( PreparedStatement statement )
         {
-            this.statement = statement;
+            super( statement );
         }
 
         @Override
         public Object invoke( Object obj, Method method, Object[] args )
             throws Throwable
         {
-            if ( "close".equals( method.getName() ) )
+            try
             {
-                return Void.TYPE;
-            }
-            else if ( "closeWrapped".equals( method.getName() ) )
-            {
-                statement.close();
-
-                return Void.TYPE;
+                return method.invoke( this, args );
             }
-
-            Object retObj = method.invoke( statement, args );
-
-            if ( ResultSet.class.equals( method.getReturnType() ) )
+            catch ( InvocationTargetException ex )
             {
-                retObj = Proxy.newProxyInstance( getClass().getClassLoader(), new Class[] { ResultSet.class },
-                    new WrappedResultSet( (PreparedStatement) obj, (ResultSet) retObj ) );
+                throw ex.getCause();
             }
-
-            return retObj;
         }
     }
 
     /**
-     * Override getStatement to return proxied Statement vs real Statement.
+     * @deprecated ResultSets of cached statements are {@link CachedResultSet}s now. Kept as one (and as the old proxy handler) for source
+     * compatibility.
      */
-    public static class WrappedResultSet implements InvocationHandler
+    @Deprecated
+    public static class WrappedResultSet extends CachedResultSet implements InvocationHandler
     {
-        private PreparedStatement parent;
-        private ResultSet rs;
-
         public WrappedResultSet( PreparedStatement parent, ResultSet rs )
         {
-            this.parent = parent;
-            this.rs = rs;
+            super( parent, rs );
         }
 
         @Override
         public Object invoke( Object obj, Method method, Object[] args )
             throws Throwable
         {
-            if ( "getStatement".equals( method.getName() ) && Statement.class.equals( method.getReturnType() ) )
+            try
             {
-                return parent;
+                return method.invoke( this, args );
+            }
+            catch ( InvocationTargetException ex )
+            {
+                throw ex.getCause();
             }
-
-            return method.invoke( rs, args );
         }
     }
 
+    /**
+     * Implemented by cached statements whose close method is blocked.
+     */
     public interface ProxyCloser
     {
-        void closeWrapped();
+        /**
+         * Really closes the underlying statement.
+         */
+        void closeWrapped()
+            throws SQLException;
     }
 
-    private class PerConnectionCache
+    private interface StatementPreparer
     {
-        private HashMap<String, PreparedStatement> preparedStatements;
-        private HashMap<String, CallableStatement> preparedCalls;
+        PreparedStatement prepare( Connection conn )
+            throws SQLException;
+    }
+
+    /**
+     * Exclusive use of one cached statement. It ends when the statement is closed, or when the statement object is garbage collected without
+     * having been closed. Statement settings changed during the lease are restored before the statement is used again.
+     */
+    static class Lease extends WeakReference<CachedPreparedStatement>
+    {
+        private PerConnectionCache owner;
+        private PerConnectionCache.Pool pool;
+        private String sql;
+        private PreparedStatement statement;
+        // Generation of the owner when leased, the statement is closed instead of reused if the cache was cleared in the meantime.
+        private long generation;
+        private boolean released;
+
+        // Values before the lease changed them (null if unchanged).
+        private Integer maxRows;
+        private Integer fetchSize;
+        private Integer queryTimeout;
+
+        private Lease( CachedPreparedStatement cached, PerConnectionCache owner, PerConnectionCache.Pool pool, String sql,
+            PreparedStatement statement )
+        {
+            super( cached, owner.abandoned );
+            this.owner = owner;
+            this.pool = pool;
+            this.sql = sql;
+            this.statement = statement;
+        }
+
+        void saveMaxRows()
+            throws SQLException
+        {
+            if ( maxRows == null )
+            {
+                maxRows = statement.getMaxRows();
+            }
+        }
+
+        void saveFetchSize()
+            throws SQLException
+        {
+            if ( fetchSize == null )
+            {
+                fetchSize = statement.getFetchSize();
+            }
+        }
 
-        public PerConnectionCache()
+        void saveQueryTimeout()
+            throws SQLException
         {
-            preparedStatements = new HashMap<>();
-            preparedCalls = new HashMap<>();
+            if ( queryTimeout == null )
+            {
+                queryTimeout = statement.getQueryTimeout();
+            }
         }
 
-        public PreparedStatement getPreparedStatement( String sql )
+        void release()
+            throws SQLException
         {
-            return preparedStatements.get( sql );
+            owner.release( this );
         }
 
-        public PreparedStatement setPreparedStatement( String sql, PreparedStatement statement )
+        /**
+         * @return true if the statement can be reused.
+         */
+        private boolean restoreSettings()
         {
-            PreparedStatement proxyStatement = (PreparedStatement) Proxy
-                .newProxyInstance( getClass().getClassLoader(), new Class[] { PreparedStatement.class, ProxyCloser.class },
-                    new WrappedPreparedStatement( statement ) );
+            try
+            {
+                if ( statement.isClosed() )
+                {
+                    return false;
+                }
 
-            preparedStatements.put( sql, proxyStatement );
+                if ( maxRows != null )
+                {
+                    statement.setMaxRows( maxRows );
+                }
+                if ( fetchSize != null )
+                {
+                    statement.setFetchSize( fetchSize );
+                }
+                if ( queryTimeout != null )
+                {
+                    statement.setQueryTimeout( queryTimeout );
+                }
+
+                return true;
+            }
+            catch ( SQLException ex )
+            {
+                return false;
+            }
+        }
+    }
 
-            return proxyStatement;
+    /**
+     * All statements of one connection. A statement is taken out of the cache while it is in use (leased) and put back when it is closed, so no
+     * two users ever share one. The maps are only touched while holding the lock, but statements are always prepared and closed after
+     * releasing it so that threads (including virtual threads) never block on database I/O while holding it.
+     */
+    private static class PerConnectionCache
+    {
+        private int maxSize;
+        private Pool statements;
+        private Pool calls;
+        private long generation;
+        // Oldest lease first.
+        private Set<Lease> leases;
+        private ReferenceQueue<CachedPreparedStatement> abandoned;
+        // Statements removed while holding the lock that still need to be closed.
+        private List<PreparedStatement> toClose;
+
+        public PerConnectionCache( int maxSize )
+        {
+            this.maxSize = maxSize;
+            statements = new Pool();
+            calls = new Pool();
+            leases = new LinkedHashSet<>();
+            abandoned = new ReferenceQueue<>();
+            toClose = new ArrayList<>();
         }
 
-        public CallableStatement getPreparedCall( String sql )
+        public void setMaxSize( int maxSize )
         {
-            return preparedCalls.get( sql );
+            synchronized ( this )
+            {
+                this.maxSize = maxSize;
+                statements.trim( 0 );
+                calls.trim( 0 );
+            }
+            closePending();
         }
 
-        public CallableStatement setPreparedCall( String sql, CallableStatement statement )
+        public PreparedStatement lease( Connection conn, String sql, boolean call, StatementPreparer preparer )
+            throws SQLException
         {
-            CallableStatement proxyCall = (CallableStatement) Proxy
-                .newProxyInstance( CallableStatement.class.getClassLoader(), new Class[] { CallableStatement.class, ProxyCloser.class },
-                    new WrappedPreparedStatement( statement ) );
+            releaseAbandoned();
+
+            Pool pool = call ? calls : statements;
+            PreparedStatement statement;
+            while ( true )
+            {
+                synchronized ( this )
+                {
+                    statement = pool.take( sql );
+                }
+                if ( statement == null || !statement.isClosed() )
+                {
+                    break;
+                }
+
+                synchronized ( this )
+                {
+                    pool.leasedCount--;
+                }
+            }
+
+            if ( statement == null )
+            {
+                statement = preparer.prepare( conn );
+
+                List<Lease> overflow;
+                synchronized ( this )
+                {
+                    pool.leasedCount++;
+                    pool.trim( 0 );
+                    overflow = pool.getOverflowingLeases();
+                }
+                closePending();
+                reclaim( overflow );
+            }
 
-            preparedCalls.put( sql, proxyCall );
+            CachedPreparedStatement cached = call ? new CachedCallableStatement( (CallableStatement) statement ) :
+                new CachedPreparedStatement( statement );
+            Lease lease = new Lease( cached, this, pool, sql, statement );
+            synchronized ( this )
+            {
+                lease.generation = generation;
+                leases.add( lease );
+            }
+            cached.setLease( lease );
 
-            return proxyCall;
+            return cached;
         }
 
-        public boolean clear()
+        public void release( Lease lease )
             throws SQLException
         {
-            boolean workDone = false;
-            for ( PreparedStatement statement : preparedStatements.values() )
+            synchronized ( this )
             {
-                if ( statement == null )
+                if ( lease.released )
                 {
-                    continue;
+                    return;
+                }
+                lease.released = true;
+                leases.remove( lease );
+            }
+            lease.clear();
+
+            boolean reusable = lease.restoreSettings();
+            synchronized ( this )
+            {
+                lease.pool.leasedCount--;
+                if ( reusable && lease.generation == generation )
+                {
+                    lease.pool.giveBack( lease.sql, lease.statement );
+                }
+                else
+                {
+                    toClose.add( lease.statement );
                 }
+            }
+            closePending();
+        }
+
+        public boolean remove( String sql )
+            throws SQLException
+        {
+            List<PreparedStatement> removed = new ArrayList<>();
+            synchronized ( this )
+            {
+                removed.addAll( statements.remove( sql ) );
+                removed.addAll( calls.remove( sql ) );
+            }
 
+            return close( removed );
+        }
+
+        public boolean clear()
+            throws SQLException
+        {
+            List<PreparedStatement> removed = new ArrayList<>();
+            synchronized ( this )
+            {
+                generation++;
+                removed.addAll( statements.clear() );
+                removed.addAll( calls.clear() );
+                removed.addAll( toClose );
+                toClose.clear();
+            }
+
+            return close( removed );
+        }
+
+        private boolean close( List<PreparedStatement> statements )
+            throws SQLException
+        {
+            boolean workDone = false;
+            for ( PreparedStatement statement : statements )
+            {
                 if ( !statement.isClosed() )
                 {
-                    ( (ProxyCloser) statement ).closeWrapped();
+                    statement.close();
                     workDone = true;
                 }
             }
-            preparedStatements.clear();
 
-            for ( CallableStatement call : preparedCalls.values() )
+            return workDone;
+        }
+
+        private void closePending()
+        {
+            List<PreparedStatement> pending;
+            synchronized ( this )
             {
-                if ( call == null )
+                if ( toClose.isEmpty() )
                 {
-                    continue;
+                    return;
+                }
+
+                pending = new ArrayList<>( toClose );
+                toClose.clear();
+            }
+
+            for ( PreparedStatement statement : pending )
+            {
+                try
+                {
+                    statement.close();
                 }
+                catch ( Exception ex )
+                {
+                    // Statement is being evicted anyways, nothing else to do.
+                }
+            }
+        }
 
-                if ( !call.isClosed() )
+        /**
+         * Closes the given leases on behalf of their users, their statement objects throw from then on.
+         */
+        private void reclaim( List<Lease> overflow )
+        {
+            for ( Lease lease : overflow )
+            {
+                try
                 {
-                    ( (ProxyCloser) call ).closeWrapped();
-                    workDone = true;
+                    CachedPreparedStatement cached = lease.get();
+                    if ( cached != null )
+                    {
+                        cached.close();
+                    }
+                    else
+                    {
+                        release( lease );
+                    }
+                }
+                catch ( Exception ex )
+                {
+                    // The statement is taken back anyways, nothing else to do.
                 }
             }
-            preparedCalls.clear();
+        }
 
-            return workDone;
+        /**
+         * Takes back the statements of leases whose statement object was dropped without being closed.
+         */
+        private void releaseAbandoned()
+        {
+            Reference<? extends CachedPreparedStatement> ref;
+            while ( ( ref = abandoned.poll() ) != null )
+            {
+                try
+                {
+                    release( (Lease) ref );
+                }
+                catch ( Exception ex )
+                {
+                    // Nobody is using the statement anymore, nothing else to do.
+                }
+            }
+        }
+
+        /**
+         * Idle driver statements of one kind (statements or calls) by SQL, bounded by the maximum size together with the ones in use. Only idle
+         * statements are ever evicted, least recently used SQL first.
+         */
+        private class Pool
+        {
+            // Key = SQL.
+            // Value = Idle statements, most recently used last. Access ordered so that the first SQL is the least recently used.
+            private LinkedHashMap<String, ArrayDeque<PreparedStatement>> idle;
+            private int idleCount;
+            private int leasedCount;
+
+            public Pool()
+            {
+                idle = new LinkedHashMap<>( 16, 0.75f, true );
+            }
+
+            public PreparedStatement take( String sql )
+            {
+                ArrayDeque<PreparedStatement> queue = idle.get( sql );
+                if ( queue == null )
+                {
+                    return null;
+                }
+
+                PreparedStatement statement = queue.pollLast();
+                if ( queue.isEmpty() )
+                {
+                    idle.remove( sql );
+                }
+                idleCount--;
+                leasedCount++;
+
+                return statement;
+            }
+
+            public void giveBack( String sql, PreparedStatement statement )
+            {
+                trim( 1 );
+                if ( maxSize >= 0 && idleCount + leasedCount >= maxSize )
+                {
+                    toClose.add( statement );
+                    return;
+                }
+
+                idle.computeIfAbsent( sql, k -> new ArrayDeque<>() ).addLast( statement );
+                idleCount++;
+            }
+
+            public List<PreparedStatement> remove( String sql )
+            {
+                ArrayDeque<PreparedStatement> queue = idle.remove( sql );
+                if ( queue == null )
+                {
+                    return Collections.emptyList();
+                }
+                idleCount -= queue.size();
+
+                return new ArrayList<>( queue );
+            }
+
+            public List<PreparedStatement> clear()
+            {
+                List<PreparedStatement> removed = new ArrayList<>();
+                for ( ArrayDeque<PreparedStatement> queue : idle.values() )
+                {
+                    removed.addAll( queue );
+                }
+                idle.clear();
+                idleCount = 0;
+
+                return removed;
+            }
+
+            /**
+             * @return the oldest leases of this pool that are beyond the maximum size once no idle statements are left. These are most likely
+             * statements that were never closed and are just waiting to be garbage collected.
+             */
+            public List<Lease> getOverflowingLeases()
+            {
+                List<Lease> overflow = new ArrayList<>();
+                int excess = maxSize > 0 ? leasedCount - maxSize : 0;
+                Iterator<Lease> iterator = leases.iterator();
+                while ( overflow.size() < excess && iterator.hasNext() )
+                {
+                    Lease lease = iterator.next();
+                    if ( lease.pool == this )
+                    {
+                        overflow.add( lease );
+                    }
+                }
+
+                return overflow;
+            }
+
+            /**
+             * Evicts idle statements until there is room for the given number of additional statements (or none are idle).
+             */
+            public void trim( int room )
+            {
+                Iterator<ArrayDeque<PreparedStatement>> iterator = idle.values().iterator();
+                while ( maxSize >= 0 && idleCount + leasedCount + room > maxSize && iterator.hasNext() )
+                {
+                    ArrayDeque<PreparedStatement> queue = iterator.next();
+                    while ( !queue.isEmpty() && idleCount + leasedCount + room > maxSize )
+                    {
+                        toClose.add( queue.pollFirst() );
+                        idleCount--;
+                    }
+                    if ( queue.isEmpty() )
+                    {
+                        iterator.remove();
+                    }
+                }
+            }
         }
     }
 }
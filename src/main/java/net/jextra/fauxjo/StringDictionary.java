@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) jextra.net.
+ *
+ * This file is part of the jextra.net software.
+ *
+ * The jextra software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * The jextra software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with the jextra software; if not, write to the Free
+ * Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA
+ * 02111-1307 USA.
+ */
+
+package net.jextra.fauxjo;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Bounded set of canonical String instances for a low cardinality column (status, country, type, ...). Rows that repeat a value share one
+ * String instead of each holding its own copy. Once full, new values are passed through unchanged so a column that turns out to have high
+ * cardinality costs no more than a lookup.
+ */
+public class StringDictionary
+{
+    // ============================================================
+    // Fields
+    // ============================================================
+
+    public static final int DEFAULT_MAX_SIZE = 256;
+
+    private int maxSize;
+    private Map<String, String> values;
+
+    // ============================================================
+    // Constructors
+    // ============================================================
+
+    public StringDictionary()
+    {
+        this( DEFAULT_MAX_SIZE );
+    }
+
+    public StringDictionary( int maxSize )
+    {
+        this.maxSize = maxSize;
+        values = new ConcurrentHashMap<>();
+    }
+
+    // ============================================================
+    // Methods
+    // ============================================================
+
+    // ----------
+    // public
+    // ----------
+
+    public int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    public int size()
+    {
+        return values.size();
+    }
+
+    /**
+     * @return the canonical instance equal to the given value, or the value itself if it is new and the dictionary is full.
+     */
+    public String canonicalize( String value )
+    {
+        if ( value == null )
+        {
+            return null;
+        }
+
+        String canonical = values.get( value );
+        if ( canonical != null )
+        {
+            return canonical;
+        }
+
+        if ( values.size() >= maxSize )
+        {
+            return value;
+        }
+
+        canonical = values.putIfAbsent( value, value );
+
+        return canonical == null ? value : canonical;
+    }
+
+    public void clear()
+    {
+        values.clear();
+    }
+}
@@ -24,6 +24,8 @@ package net.jextra.fauxjo;
 import java.lang.reflect.*;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.*;
 import net.jextra.fauxjo.beandef.*;
 import net.jextra.fauxjo.coercer.*;
 
@@ -40,22 +42,48 @@ public class Table<T>
     private static final String TABLE_NAME = "TABLE_NAME";
     private static final String COLUMN_NAME = "COLUMN_NAME";
     private static final String DATA_TYPE = "DATA_TYPE";
+    private static final String TYPE_NAME = "TYPE_NAME";
+    private static final String KEY_SEQ = "KEY_SEQ";
+
+    // Number of keys per multi-get statement. Batches are padded up to one of these so only a few statement shapes are ever prepared.
+    private static final int[] KEY_BATCH_SIZES = { 1, 4, 16, 64, 256, 1024 };
+    private static final int MAX_KEY_BATCH_PARAMETERS = 1024;
+    // Number of distinct scan filters whose SQL is kept per plan, the SQL of any others is built on each call.
+    private static final int MAX_CACHED_SCAN_FILTERS = 64;
+
+    // Clauses after which the select list can be the plain column names of this table.
+    private static final Pattern PROJECTABLE_CLAUSE = Pattern.compile( "\\s*($|(where|order|group|having|limit|offset|fetch|for)\\b)",
+        Pattern.CASE_INSENSITIVE );
 
     private boolean supportsGeneratedKeys;
     private Connection conn;
     private StatementCache statementCache;
+    private boolean ownsStatementCache;
     private String fullTableName;
     private String schemaName;
     private String tableName;
     private Class<T> beanClass;
     private Coercer coercer;
 
-    // Key = Lowercase column name (in source code, this is known as the "key").
-    // Value = ColumnInfo object that specifies the type and real column name.
-    private Map<String, ColumnInfo> columnInfos;
+    // Snapshot of the column infos and the SQL derived from them. Swapped as a whole when the shared column infos change.
+    private volatile Plan plan;
+    private String databaseId;
+    private DriverFeatures driverFeatures;
+
+    // Column infos built from the types declared on the bean (null if not fully declared).
+    private boolean useDeclaredColumnInfos;
+    private boolean declaredChecked;
+    private ColumnInfoCache.Entry declaredEntry;
 
-    private String updateSql;
-    private String deleteSql;
+    // Key = Lowercase column name.
+    // Value = Codec used instead of the one picked from the column type.
+    private Map<String, BindCodec> bindCodecOverrides;
+
+    // Lowercase keys of the primary key columns, alphabetical.
+    private List<String> primaryKeys;
+
+    // Invalidated by insert, update and delete (null if not caching).
+    private EntityCache<T> entityCache;
 
     // ============================================================
     // Constructors
@@ -64,6 +92,7 @@ public class Table<T>
     public Table( String fullTableName, Class<T> beanClass )
     {
         supportsGeneratedKeys = true;
+        useDeclaredColumnInfos = true;
         this.fullTableName = fullTableName;
         String[] words = fullTableName.toLowerCase().split( "\\." );
         if ( words.length == 1 )
@@ -79,6 +108,8 @@ public class Table<T>
 
         this.beanClass = beanClass;
         coercer = new Coercer();
+        bindCodecOverrides = new HashMap<>();
+        driverFeatures = DriverFeatures.NONE;
     }
 
     // ============================================================
@@ -99,20 +130,59 @@ public class Table<T>
         this.supportsGeneratedKeys = value;
     }
 
+    public boolean getUseDeclaredColumnInfos()
+    {
+        return useDeclaredColumnInfos;
+    }
+
+    /**
+     * If true (the default) and every column of the bean declares its sqlType, the database meta data is never read.
+     */
+    public void setUseDeclaredColumnInfos( boolean value )
+    {
+        useDeclaredColumnInfos = value;
+        plan = null;
+    }
+
+    /**
+     * @return true if the column infos of this Table come from the types declared on the bean instead of the database meta data.
+     */
+    public boolean hasDeclaredColumnInfos()
+        throws SQLException
+    {
+        return getDeclaredEntry() != null;
+    }
+
     public void setConnection( Connection conn )
         throws SQLException
     {
-        if ( statementCache != null )
-        {
-            statementCache.clear();
-            statementCache = null;
-        }
+        setConnection( conn, null );
+    }
 
+    /**
+     * @param statementCache cache shared with the other users of the connection (e.g. the {@link Home} of this Table) or null for this Table
+     * to use its own.
+     */
+    public void setConnection( Connection conn, StatementCache statementCache )
+        throws SQLException
+    {
         this.conn = conn;
-        if ( conn != null )
+        // Force the shared column infos to be re-checked against the (possibly different) database.
+        databaseId = null;
+        DriverFeatures features = DriverFeatures.get( conn );
+        if ( features != driverFeatures )
         {
-            statementCache = new StatementCache();
+            // The bind codecs depend on the driver.
+            driverFeatures = features;
+            plan = null;
         }
+        this.statementCache = resolveStatementCache( this.statementCache, ownsStatementCache, statementCache );
+        ownsStatementCache = statementCache == null;
+    }
+
+    public StatementCache getStatementCache()
+    {
+        return statementCache;
     }
 
     public String getSchemaName()
@@ -135,15 +205,148 @@ public class Table<T>
         return coercer;
     }
 
+    /**
+     * Replaces the codec picked by {@link BindCodecs} for the given column.
+     *
+     * @param codec codec to use or null to go back to the picked one.
+     */
+    public void setBindCodec( String columnName, BindCodec codec )
+    {
+        synchronized ( bindCodecOverrides )
+        {
+            if ( codec == null )
+            {
+                bindCodecOverrides.remove( columnName.toLowerCase() );
+            }
+            else
+            {
+                bindCodecOverrides.put( columnName.toLowerCase(), codec );
+            }
+        }
+        plan = null;
+    }
+
+    /**
+     * Drops the shared column meta data of this table (for all Tables in the process) so that it is re-read from the database on next use.
+     */
+    public void invalidateColumnInfos()
+        throws SQLException
+    {
+        if ( conn != null )
+        {
+            ColumnInfoCache.invalidate( ColumnInfoCache.getDatabaseId( conn ), schemaName, tableName );
+        }
+    }
+
+    /**
+     * Compares the column types declared on the bean against the live schema of the given connection.
+     *
+     * @return description of each difference found, empty if the declarations match the database.
+     */
+    public List<String> validateDeclaredColumnInfos( Connection conn )
+        throws SQLException
+    {
+        List<String> drift = new ArrayList<>();
+        Map<String, ColumnInfo> live = readColumnInfos( conn );
+
+        Map<String, FieldDef> fieldDefs = BeanDefCache.getFieldDefs( beanClass );
+        for ( String key : fieldDefs.keySet() )
+        {
+            FieldDef fieldDef = fieldDefs.get( key );
+            if ( fieldDef.getSqlType() == null )
+            {
+                continue;
+            }
+
+            ColumnInfo columnInfo = live.get( key );
+            if ( columnInfo == null )
+            {
+                drift.add( String.format( "Column %s.%s is declared but does not exist", fullTableName, fieldDef.getColumnName() ) );
+            }
+            else if ( columnInfo.getSqlType() != fieldDef.getSqlType() )
+            {
+                drift.add( String.format( "Column %s.%s is declared as %s but is %s", fullTableName, fieldDef.getColumnName(),
+                    getSqlTypeName( fieldDef.getSqlType() ), getSqlTypeName( columnInfo.getSqlType() ) ) );
+            }
+        }
+
+        return drift;
+    }
+
+    /**
+     * Re-reads the columns of this table through the given connection and if they differ from the shared column infos, swaps in the new ones
+     * for every Table of this table. Calls already in progress finish with the column infos they started with.
+     *
+     * @return true if the columns changed.
+     */
+    public boolean refreshColumnInfos( Connection conn )
+        throws SQLException
+    {
+        if ( getDeclaredEntry() != null )
+        {
+            return false;
+        }
+
+        String databaseId = ColumnInfoCache.getDatabaseId( conn );
+        ColumnInfoCache.Entry entry = ColumnInfoCache.get( databaseId, schemaName, tableName );
+        Map<String, ColumnInfo> live = readColumnInfos( conn );
+        if ( entry != null && ColumnInfoCache.getFingerprint( live ).equals( entry.getFingerprint() ) )
+        {
+            return false;
+        }
+
+        ColumnInfoCache.put( databaseId, schemaName, tableName, live );
+
+        return entry != null;
+    }
+
+    /**
+     * @return select of the columns that are both in the table and on the bean, followed by the given clause. Falls back to "select *" if
+     * the columns are not known (no connection yet and no declared column infos) or if the clause does not start with a keyword (where,
+     * order by, ...) and so might alias the table or join others, which could make the unqualified column names ambiguous.
+     *
+     * @throws UncheckedSQLException if the columns could not be read from the database.
+     */
     public String buildBasicSelectStatement( String clause )
     {
-        String trimmedClause = "";
-        if ( clause != null && !clause.trim().isEmpty() )
+        try
         {
-            trimmedClause = clause;
+            Plan plan = null;
+            if ( clause != null && PROJECTABLE_CLAUSE.matcher( clause ).lookingAt() && ( conn != null || hasDeclaredColumnInfos() ) )
+            {
+                plan = getPlan();
+            }
+
+            return buildBasicSelect( plan, clause );
+        }
+        catch ( SQLException ex )
+        {
+            throw new UncheckedSQLException( ex );
         }
+    }
 
-        return String.format( "select * from %s %s", fullTableName, trimmedClause );
+    /**
+     * Partial projection: select of only the given bean properties (column keys) followed by the clause. Build the beans of its ResultSet with
+     * {@link BeanBuilder#getPartialList} (or {@link Home#getPartialList}), the other properties are left unset.
+     */
+    public String buildSelectStatement( Collection<String> keys, String clause )
+        throws SQLException
+    {
+        Plan plan = getPlan();
+        List<String> lowerKeys = new ArrayList<>();
+        for ( String key : keys )
+        {
+            String lowerKey = key.toLowerCase();
+            if ( !plan.columnInfos.containsKey( lowerKey ) )
+            {
+                throw new FauxjoException( "Table [" + fullTableName + "] does not have a column [" + key + "]" );
+            }
+            lowerKeys.add( lowerKey );
+        }
+
+        String trimmedClause = clause == null ? "" : clause;
+
+        return String.format( "select %s from %s %s", buildSelectList( plan, lowerKeys ), fullTableName, trimmedClause );
     }
 
     /**
@@ -155,9 +358,21 @@ public class Table<T>
         InsertDef insertDef = getInsertDef( bean );
         PreparedStatement insStatement = statementCache.prepareStatement( conn, insertDef.getInsertSql(), supportsGeneratedKeys );
 
-        setInsertValues( insStatement, insertDef, 1, bean );
-        int rows = insStatement.executeUpdate();
-        retrieveGeneratedKeys( insStatement, insertDef, bean );
+        int rows;
+        try
+        {
+            setInsertValues( insStatement, insertDef, 1, bean );
+            rows = insStatement.executeUpdate();
+            retrieveGeneratedKeys( insStatement, insertDef, bean );
+        }
+        finally
+        {
+            insStatement.close();
+        }
+        if ( entityCache != null )
+        {
+            entityCache.invalidate( getPrimaryKeyValues( bean ) );
+        }
 
         return rows;
     }
@@ -177,15 +392,27 @@ public class Table<T>
         insertDef.setRowCount( beans.size() );
         PreparedStatement insStatement = statementCache.prepareStatement( conn, insertDef.getInsertSql(), supportsGeneratedKeys );
 
-        int paramIndex = 1;
-        for ( T bean : beans )
+        int rows;
+        try
         {
-            paramIndex = setInsertValues( insStatement, insertDef, paramIndex, bean );
-        }
+            int paramIndex = 1;
+            for ( T bean : beans )
+            {
+                paramIndex = setInsertValues( insStatement, insertDef, paramIndex, bean );
+            }
 
-        int rows = insStatement.executeUpdate();
+            rows = insStatement.executeUpdate();
+        }
+        finally
+        {
+            insStatement.close();
+        }
         // TODO -- not sure how to deal with generated keys in a multi-insert
         //        retrieveGeneratedKeys( insertDef, bean );
+        if ( entityCache != null )
+        {
+            entityCache.invalidateMissing();
+        }
 
         return rows;
     }
@@ -201,13 +428,25 @@ public class Table<T>
         InsertDef insertDef = getInsertDef( null );
         PreparedStatement insStatement = statementCache.prepareStatement( conn, insertDef.getInsertSql(), supportsGeneratedKeys );
 
-        for ( T bean : beans )
+        int[] rows;
+        try
         {
-            setInsertValues( insStatement, insertDef, 1, bean );
-            insStatement.addBatch();
-        }
+            for ( T bean : beans )
+            {
+                setInsertValues( insStatement, insertDef, 1, bean );
+                insStatement.addBatch();
+            }
 
-        int[] rows = insStatement.executeBatch();
+            rows = insStatement.executeBatch();
+        }
+        finally
+        {
+            insStatement.close();
+        }
+        if ( entityCache != null )
+        {
+            entityCache.invalidateMissing();
+        }
 
         return rows;
     }
@@ -218,10 +457,24 @@ public class Table<T>
     public int update( T bean )
         throws SQLException
     {
-        PreparedStatement statement = statementCache.prepareStatement( conn, getUpdateSql(), supportsGeneratedKeys );
-        setUpdateValues( statement, bean );
+        Plan plan = getPlan();
+        PreparedStatement statement = statementCache.prepareStatement( conn, getUpdateSql( plan ), supportsGeneratedKeys );
+        int rows;
+        try
+        {
+            setUpdateValues( plan, statement, bean );
+            rows = statement.executeUpdate();
+        }
+        finally
+        {
+            statement.close();
+        }
+        if ( entityCache != null )
+        {
+            entityCache.invalidate( getPrimaryKeyValues( bean ) );
+        }
 
-        return statement.executeUpdate();
+        return rows;
     }
 
     /**
@@ -230,26 +483,46 @@ public class Table<T>
     public boolean delete( T bean )
         throws SQLException
     {
-        PreparedStatement statement = statementCache.prepareStatement( conn, getDeleteSql(), supportsGeneratedKeys );
-        setDeleteValues( statement, bean );
+        Plan plan = getPlan();
+        PreparedStatement statement = statementCache.prepareStatement( conn, getDeleteSql( plan ), supportsGeneratedKeys );
+        boolean deleted;
+        try
+        {
+            setDeleteValues( plan, statement, bean );
+            deleted = statement.executeUpdate() > 0;
+        }
+        finally
+        {
+            statement.close();
+        }
+        if ( entityCache != null )
+        {
+            entityCache.invalidate( getPrimaryKeyValues( bean ) );
+        }
 
-        return statement.executeUpdate() > 0;
+        return deleted;
     }
 
     public String getUpdateSql()
         throws SQLException
     {
-        if ( updateSql != null )
+        return getUpdateSql( getPlan() );
+    }
+
+    private String getUpdateSql( Plan plan )
+        throws SQLException
+    {
+        if ( plan.updateSql != null )
         {
-            return updateSql;
+            return plan.updateSql;
         }
 
         StringBuilder setterClause = new StringBuilder();
         StringBuilder whereClause = new StringBuilder();
 
-        for ( String key : getColumnInfos().keySet() )
+        for ( String key : plan.columnInfos.keySet() )
         {
-            ColumnInfo columnInfo = getColumnInfos().get( key );
+            ColumnInfo columnInfo = plan.columnInfos.get( key );
 
             FieldDef fieldDef = BeanDefCache.getFieldDefs( beanClass ).get( key );
             if ( fieldDef != null )
@@ -281,33 +554,38 @@ public class Table<T>
                 "At least one field must be identified as a primary key in order to update rows in the table [" + fullTableName + "]" );
         }
 
-        updateSql = String.format( "update %s set %s where %s", fullTableName, setterClause, whereClause );
+        plan.updateSql = String.format( "update %s set %s where %s", fullTableName, setterClause, whereClause );
 
-        return updateSql;
+        return plan.updateSql;
     }
 
     public void setUpdateValues( PreparedStatement statement, T bean )
         throws SQLException
+    {
+        setUpdateValues( getPlan(), statement, bean );
+    }
+
+    private void setUpdateValues( Plan plan, PreparedStatement statement, T bean )
+        throws SQLException
     {
         List<DataValue> values = new ArrayList<>();
         List<DataValue> keyValues = new ArrayList<>();
 
         Map<String, FieldDef> beanFieldDefs = BeanDefCache.getFieldDefs( bean.getClass() );
-        for ( String key : getColumnInfos().keySet() )
+        for ( String key : plan.columnInfos.keySet() )
         {
-            ColumnInfo columnInfo = getColumnInfos().get( key );
-            Object val = getFieldValueFromBean( bean, key, columnInfo );
+            Object val = readValue( bean, key );
 
             FieldDef fieldDef = beanFieldDefs.get( key );
             if ( fieldDef != null )
             {
                 if ( fieldDef.isPrimaryKey() )
                 {
-                    keyValues.add( new DataValue( val, columnInfo.getSqlType() ) );
+                    keyValues.add( new DataValue( key, val ) );
                 }
                 else
                 {
-                    values.add( new DataValue( val, columnInfo.getSqlType() ) );
+                    values.add( new DataValue( key, val ) );
                 }
             }
         }
@@ -315,33 +593,13 @@ public class Table<T>
         int paramIndex = 1;
         for ( DataValue value : values )
         {
-            Object coercedValue = coercer.convertTo( value.getValue(), SqlTypeMapping.getJavaClass( value.getSqlType() ) );
-            statement.setObject( paramIndex, coercedValue, value.getSqlType() );
-
-            /* if ( value.getSqlType() == java.sql.Types.ARRAY )
-            {
-                if ( value.getValue() == null )
-                {
-                    statement.setNull( propIndex, value.getSqlType() );
-                }
-                else
-                {
-                    Array array = statement.getConnection().createArrayOf( getTypeName( value.getValue() ), (Object[]) value.getValue() );
-                    statement.setArray( propIndex, array );
-                }
-            }
-            else
-            {
-                statement.setObject( propIndex, value.getValue(), value.getSqlType() );
-            }*/
-
+            bindValue( plan, statement, paramIndex, value.getKey(), value.getValue() );
             paramIndex++;
         }
 
         for ( DataValue value : keyValues )
         {
-            Object coercedValue = coercer.convertTo( value.getValue(), SqlTypeMapping.getJavaClass( value.getSqlType() ) );
-            statement.setObject( paramIndex, coercedValue, value.getSqlType() );
+            bindValue( plan, statement, paramIndex, value.getKey(), value.getValue() );
             paramIndex++;
         }
     }
@@ -349,9 +607,15 @@ public class Table<T>
     public String getDeleteSql()
         throws SQLException
     {
-        if ( deleteSql != null )
+        return getDeleteSql( getPlan() );
+    }
+
+    private String getDeleteSql( Plan plan )
+        throws SQLException
+    {
+        if ( plan.deleteSql != null )
         {
-            return deleteSql;
+            return plan.deleteSql;
         }
 
         StringBuilder whereClause = new StringBuilder();
@@ -365,7 +629,7 @@ public class Table<T>
                 continue;
             }
 
-            ColumnInfo columnInfo = getColumnInfos().get( key );
+            ColumnInfo columnInfo = plan.columnInfos.get( key );
 
             if ( whereClause.length() > 0 )
             {
@@ -381,41 +645,402 @@ public class Table<T>
                 "At least one field must be identified as a primary key in order to delete from the table [" + fullTableName + "]" );
         }
 
-        deleteSql = String.format( "delete from %s where %s", fullTableName, whereClause );
+        plan.deleteSql = String.format( "delete from %s where %s", fullTableName, whereClause );
+
+        return plan.deleteSql;
+    }
+
+    public void setDeleteValues( PreparedStatement statement, T bean )
+        throws SQLException
+    {
+        setDeleteValues( getPlan(), statement, bean );
+    }
+
+    private void setDeleteValues( Plan plan, PreparedStatement statement, T bean )
+        throws SQLException
+    {
+        List<DataValue> primaryKeyValues = new ArrayList<>();
+
+        Map<String, FieldDef> fieldDefs = BeanDefCache.getFieldDefs( bean.getClass() );
+        for ( String key : fieldDefs.keySet() )
+        {
+            FieldDef fieldDef = fieldDefs.get( key );
+            if ( fieldDef == null || !fieldDef.isPrimaryKey() )
+            {
+                continue;
+            }
+
+            primaryKeyValues.add( new DataValue( key, readValue( bean, key ) ) );
+        }
+
+        int paramIndex = 1;
+        for ( DataValue value : primaryKeyValues )
+        {
+            bindValue( plan, statement, paramIndex, value.getKey(), value.getValue() );
+            paramIndex++;
+        }
+    }
+
+
+    public EntityCache<T> getEntityCache()
+    {
+        return entityCache;
+    }
+
+    /**
+     * @param entityCache cache of beans by primary key whose entries insert, update and delete invalidate, or null to not cache.
+     */
+    public void setEntityCache( EntityCache<T> entityCache )
+    {
+        this.entityCache = entityCache;
+    }
+
+    /**
+     * Prepares the single row insert, update and delete statements of this table ahead of their first use.
+     */
+    public void prepareStatements()
+        throws SQLException
+    {
+        Plan plan = getPlan();
+        // Closing puts them in the cache.
+        statementCache.prepareStatement( conn, getInsertDef( null ).getInsertSql(), supportsGeneratedKeys ).close();
+
+        // Update and delete need a primary key, without one they would fail here instead of when used.
+        for ( FieldDef fieldDef : BeanDefCache.getFieldDefs( beanClass ).values() )
+        {
+            if ( fieldDef.isPrimaryKey() )
+            {
+                statementCache.prepareStatement( conn, getUpdateSql( plan ), supportsGeneratedKeys ).close();
+                statementCache.prepareStatement( conn, getDeleteSql( plan ), supportsGeneratedKeys ).close();
+                break;
+            }
+        }
+    }
+
+    /**
+     * @return lowercase keys of the primary key columns in the order key values are given to the find by key methods: alphabetical, the same
+     * order the Fauxjo bean uses to compare primary keys.
+     */
+    public List<String> getPrimaryKeys()
+        throws SQLException
+    {
+        if ( primaryKeys == null )
+        {
+            List<String> keys = new ArrayList<>();
+            Map<String, FieldDef> fieldDefs = BeanDefCache.getFieldDefs( beanClass );
+            for ( String key : fieldDefs.keySet() )
+            {
+                if ( fieldDefs.get( key ).isPrimaryKey() )
+                {
+                    keys.add( key );
+                }
+            }
+
+            if ( keys.isEmpty() )
+            {
+                throw new FauxjoException(
+                    "At least one field must be identified as a primary key in order to find by key in the table [" + fullTableName + "]" );
+            }
+
+            primaryKeys = Collections.unmodifiableList( keys );
+        }
+
+        return primaryKeys;
+    }
+
+    /**
+     * @return primary key values of the bean in {@link #getPrimaryKeys()} order.
+     */
+    public List<Object> getPrimaryKeyValues( T bean )
+        throws SQLException
+    {
+        List<Object> values = new ArrayList<>();
+        for ( String key : getPrimaryKeys() )
+        {
+            values.add( readValue( bean, key ) );
+        }
+
+        return values;
+    }
+
+    /**
+     * Converts a key as given by a caller (a single value, or an Object[]/List of values for a composite key) into primary key values of the
+     * classes of the bean properties, so that it can be bound and compared with {@link #getPrimaryKeyValues}.
+     */
+    public List<Object> toPrimaryKeyValues( Object key )
+        throws SQLException
+    {
+        List<String> keys = getPrimaryKeys();
+
+        List<?> given;
+        if ( key instanceof Object[] )
+        {
+            given = Arrays.asList( (Object[]) key );
+        }
+        else if ( key instanceof List && keys.size() > 1 )
+        {
+            given = (List<?>) key;
+        }
+        else
+        {
+            given = Collections.singletonList( key );
+        }
+
+        if ( given.size() != keys.size() )
+        {
+            throw new FauxjoException( "Table [" + fullTableName + "] has " + keys.size() + " primary key columns " + keys + " but " + given.size() +
+                " values were given" );
+        }
+
+        Map<String, FieldDef> fieldDefs = BeanDefCache.getFieldDefs( beanClass );
+        List<Object> values = new ArrayList<>( keys.size() );
+        for ( int i = 0; i < keys.size(); i++ )
+        {
+            values.add( coercer.convertTo( given.get( i ), fieldDefs.get( keys.get( i ) ).getValueClass() ) );
+        }
+
+        return values;
+    }
+
+    public String getSelectByKeySql()
+        throws SQLException
+    {
+        Plan plan = getPlan();
+        if ( plan.selectByKeySql == null )
+        {
+            plan.selectByKeySql = buildBasicSelect( plan, "where " + getKeyPredicate( plan ) );
+        }
+
+        return plan.selectByKeySql;
+    }
+
+    /**
+     * @return select of a constant for the row of a primary key, no columns are read.
+     */
+    public String getExistsByKeySql()
+        throws SQLException
+    {
+        Plan plan = getPlan();
+        if ( plan.existsByKeySql == null )
+        {
+            plan.existsByKeySql = "select 1 from " + getFullTableName() + " where " + getKeyPredicate( plan );
+        }
+
+        return plan.existsByKeySql;
+    }
+
+    /**
+     * @return number of keys to put in the next multi-get statement given the number of keys left: the smallest batch size that holds them
+     * all, or the largest one. Short batches are padded by repeating a key.
+     */
+    public int getKeyBatchSize( int keyCount )
+        throws SQLException
+    {
+        int max = MAX_KEY_BATCH_PARAMETERS / getPrimaryKeys().size();
+        int size = 1;
+        for ( int batchSize : KEY_BATCH_SIZES )
+        {
+            if ( batchSize > max )
+            {
+                break;
+            }
+            size = batchSize;
+            if ( batchSize >= keyCount )
+            {
+                break;
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * @param keyCount one of the sizes returned by {@link #getKeyBatchSize}.
+     * @return select of keyCount keys, an IN list for a single primary key column or OR'ed key predicates for a composite key.
+     */
+    public String getSelectByKeysSql( int keyCount )
+        throws SQLException
+    {
+        Plan plan = getPlan();
+        String sql = plan.selectByKeysSql.get( keyCount );
+        if ( sql == null )
+        {
+            StringBuilder where = new StringBuilder();
+            List<String> keys = getPrimaryKeys();
+            if ( keys.size() == 1 )
+            {
+                where.append( plan.columnInfos.get( keys.get( 0 ) ).getRealName() ).append( " in (" );
+                for ( int i = 0; i < keyCount; i++ )
+                {
+                    where.append( i == 0 ? "?" : ",?" );
+                }
+                where.append( ")" );
+            }
+            else
+            {
+                String predicate = "(" + getKeyPredicate( plan ) + ")";
+                for ( int i = 0; i < keyCount; i++ )
+                {
+                    if ( i > 0 )
+                    {
+                        where.append( " or " );
+                    }
+                    where.append( predicate );
+                }
+            }
+
+            sql = buildBasicSelect( plan, "where " + where );
+            plan.selectByKeysSql.put( keyCount, sql );
+        }
+
+        return sql;
+    }
+
+    /**
+     * Binds primary key values (see {@link #toPrimaryKeyValues}) starting at the given parameter.
+     *
+     * @return index of the next parameter.
+     */
+    public int setPrimaryKeyValues( PreparedStatement statement, int paramIndex, List<Object> values )
+        throws SQLException
+    {
+        Plan plan = getPlan();
+        List<String> keys = getPrimaryKeys();
+        for ( int i = 0; i < keys.size(); i++ )
+        {
+            bindValue( plan, statement, paramIndex++, keys.get( i ), values.get( i ) );
+        }
+
+        return paramIndex;
+    }
+
+    /**
+     * @param filter optional condition (without "where") the scanned rows must also meet, or null.
+     * @param afterKey true for the SQL of the pages after the first, which only selects rows whose primary key is greater than the last one
+     * seen.
+     * @return select of the rows in the order of the primary key columns in the database (so the primary key index can be used), see
+     * {@link KeysetScan}. Never uses OFFSET, the pages are limited with setMaxRows.
+     */
+    public String getScanSql( String filter, boolean afterKey )
+        throws SQLException
+    {
+        return getScanSql( filter, afterKey, 0 );
+    }
+
+    /**
+     * Like {@link #getScanSql(String, boolean)} but also limits the SQL itself to a page of rows (if the dialect of the database is known) so
+     * that the query planner can stop after the page instead of sorting the rest of the table.
+     *
+     * @param pageSize rows per page, or 0 to not add a limit clause.
+     */
+    public String getScanSql( String filter, boolean afterKey, int pageSize )
+        throws SQLException
+    {
+        Plan plan = getPlan();
+        String cacheKey = afterKey + ":" + pageSize + ":" + ( filter == null ? "" : filter );
+        String sql = plan.scanSql.get( cacheKey );
+        if ( sql == null )
+        {
+            List<String> keys = getScanKeys( plan );
+            List<String> conditions = new ArrayList<>();
+            if ( filter != null && !filter.trim().isEmpty() )
+            {
+                conditions.add( "(" + filter + ")" );
+            }
+            if ( afterKey && keys.size() > 1 && driverFeatures.supportsRowValues() )
+            {
+                StringBuilder columns = new StringBuilder();
+                StringBuilder params = new StringBuilder();
+                for ( String key : keys )
+                {
+                    columns.append( columns.length() == 0 ? "" : "," ).append( plan.columnInfos.get( key ).getRealName() );
+                    params.append( params.length() == 0 ? "?" : ",?" );
+                }
+                conditions.add( "(" + columns + ") > (" + params + ")" );
+            }
+            else if ( afterKey )
+            {
+                // (k1, k2, ...) > (?, ?, ...) written out as (k1>?) or (k1=? and k2>?) or ... which every database understands.
+                StringBuilder keyset = new StringBuilder();
+                for ( int i = 0; i < keys.size(); i++ )
+                {
+                    keyset.append( i == 0 ? "(" : " or (" );
+                    for ( int j = 0; j < i; j++ )
+                    {
+                        keyset.append( plan.columnInfos.get( keys.get( j ) ).getRealName() ).append( "=? and " );
+                    }
+                    keyset.append( plan.columnInfos.get( keys.get( i ) ).getRealName() ).append( ">?)" );
+                }
+                conditions.add( "(" + keyset + ")" );
+            }
+
+            StringBuilder orderBy = new StringBuilder();
+            for ( String key : keys )
+            {
+                orderBy.append( orderBy.length() == 0 ? "" : "," ).append( plan.columnInfos.get( key ).getRealName() );
+            }
+
+            String where = conditions.isEmpty() ? "" : "where " + String.join( " and ", conditions ) + " ";
+            String limit = pageSize > 0 ? driverFeatures.getLimitClause( pageSize ) : null;
+            sql = buildBasicSelect( plan, where + "order by " + orderBy + ( limit == null ? "" : " " + limit ) );
+            // Filters with inlined values would otherwise add an entry per call.
+            if ( plan.scanSql.size() < MAX_CACHED_SCAN_FILTERS * 2 )
+            {
+                plan.scanSql.put( cacheKey, sql );
+            }
+        }
 
-        return deleteSql;
+        return sql;
     }
 
-    public void setDeleteValues( PreparedStatement statement, T bean )
+    /**
+     * Binds the key of the last row seen for the SQL of {@link #getScanSql} with afterKey true.
+     *
+     * @return index of the next parameter.
+     */
+    public int setScanKeyValues( PreparedStatement statement, int paramIndex, List<Object> afterKey )
         throws SQLException
     {
-        List<DataValue> primaryKeyValues = new ArrayList<>();
-
-        Map<String, FieldDef> fieldDefs = BeanDefCache.getFieldDefs( bean.getClass() );
-        for ( String key : fieldDefs.keySet() )
+        Plan plan = getPlan();
+        List<String> primaryKeys = getPrimaryKeys();
+        List<String> keys = getScanKeys( plan );
+        if ( keys.size() > 1 && driverFeatures.supportsRowValues() )
         {
-            FieldDef fieldDef = fieldDefs.get( key );
-            if ( fieldDef == null || !fieldDef.isPrimaryKey() )
+            for ( String key : keys )
             {
-                continue;
+                bindValue( plan, statement, paramIndex++, key, afterKey.get( primaryKeys.indexOf( key ) ) );
             }
 
-            ColumnInfo columnInfo = getColumnInfos().get( key );
-            Class<?> targetClass = SqlTypeMapping.getJavaClass( columnInfo.getSqlType() );
-
-            Object val = readValue( bean, key );
-            val = coercer.convertTo( val, targetClass );
+            return paramIndex;
+        }
 
-            primaryKeyValues.add( new DataValue( val, columnInfo.getSqlType() ) );
+        for ( int i = 0; i < keys.size(); i++ )
+        {
+            for ( int j = 0; j <= i; j++ )
+            {
+                bindValue( plan, statement, paramIndex++, keys.get( j ), afterKey.get( primaryKeys.indexOf( keys.get( j ) ) ) );
+            }
         }
 
-        int paramIndex = 1;
-        for ( DataValue value : primaryKeyValues )
+        return paramIndex;
+    }
+
+    // ----------
+    // package
+    // ----------
+
+    /**
+     * Picks the statement cache after a re-bind. A cache of its own is kept (not cleared) so statements of a connection used before stay
+     * prepared; they are only dropped by LRU eviction or once the connection is closed.
+     */
+    static StatementCache resolveStatementCache( StatementCache current, boolean ownsCurrent, StatementCache shared )
+    {
+        if ( shared != null )
         {
-            Object coercedValue = coercer.convertTo( value.getValue(), SqlTypeMapping.getJavaClass( value.getSqlType() ) );
-            statement.setObject( paramIndex, coercedValue, value.getSqlType() );
-            paramIndex++;
+            return shared;
         }
+
+        return current != null && ownsCurrent ? current : new StatementCache();
     }
 
     // ----------
@@ -429,11 +1054,13 @@ public class Table<T>
     protected InsertDef getInsertDef( T bean )
         throws SQLException
     {
+        Plan plan = getPlan();
+
         StringBuilder columns = new StringBuilder();
         StringBuilder questionMarks = new StringBuilder();
 
         Map<String, FieldDef> beanFieldDefs = BeanDefCache.getFieldDefs( beanClass );
-        Map<String, ColumnInfo> columnInfos = getColumnInfos();
+        Map<String, ColumnInfo> columnInfos = plan.columnInfos;
         List<String> generatedColumns = new ArrayList<>();
         for ( String key : columnInfos.keySet() )
         {
@@ -474,23 +1101,25 @@ public class Table<T>
         String insertSql = String.format( "insert into %s (%s) values ", fullTableName, columns );
         String valuesSql = String.format( "(%s)", questionMarks );
 
-        return new InsertDef( insertSql, valuesSql, generatedColumns );
+        return new InsertDef( plan, insertSql, valuesSql, generatedColumns );
     }
 
     protected int setInsertValues( PreparedStatement insStatement, InsertDef insertDef, int paramIndex, T bean )
         throws SQLException
     {
+        Plan plan = insertDef.getPlan();
+        Map<String, ColumnInfo> columnInfos = plan.columnInfos;
+
         Map<String, FieldDef> beanFieldDefs = BeanDefCache.getFieldDefs( bean.getClass() );
-        for ( String key : getColumnInfos().keySet() )
+        for ( String key : columnInfos.keySet() )
         {
-            ColumnInfo columnInfo = getColumnInfos().get( key );
             FieldDef fieldDef = beanFieldDefs.get( key );
             if ( fieldDef == null )
             {
                 continue;
             }
 
-            Object val = getFieldValueFromBean( bean, key, columnInfo );
+            Object val = readValue( bean, key );
 
             // If the column was a generated column, a ? was not reserved for this column.
             if ( insertDef.getGeneratedKeys().contains( key ) )
@@ -498,33 +1127,7 @@ public class Table<T>
                 continue;
             }
 
-            int sqlType = columnInfo.getSqlType();
-
-            if ( val == null )
-            {
-                insStatement.setNull( paramIndex, sqlType );
-            }
-            else
-            {
-                Object coercedValue = coercer.convertTo( val, SqlTypeMapping.getJavaClass( sqlType ) );
-                insStatement.setObject( paramIndex, coercedValue, sqlType );
-
-                /*if ( sqlType == Types.ARRAY )
-                {
-                    Array array = statement.getConnection().createArrayOf( getTypeName( val ), (Object[]) val );
-                    statement.setArray( paramIndex, array );
-                }
-                // TODO
-                else if ( val instanceof Instant )
-                {
-                    statement.setObject( paramIndex, Timestamp.from( (Instant) val ), sqlType );
-                }
-                else
-                {
-                    Object coercedValue = coercer.convertTo( val, SQLTypeMapping.getJavaClass( sqlType ) );
-                    statement.setObject( paramIndex, coercedValue, sqlType );
-                }*/
-            }
+            bindValue( plan, insStatement, paramIndex, key, val );
 
             paramIndex++;
         }
@@ -562,24 +1165,261 @@ public class Table<T>
     // private
     // ----------
 
-    private Map<String, ColumnInfo> getColumnInfos()
+    /**
+     * @return the current snapshot, replaced by a new one if the shared column infos changed. Callers should use the returned snapshot for the
+     * whole operation so that a concurrent swap does not mix SQL and values of different versions.
+     */
+    private Plan getPlan()
+        throws SQLException
+    {
+        Plan current = plan;
+        if ( current == null || ( current.entry != declaredEntry && ( databaseId == null || current.entry.isStale() ) ) )
+        {
+            ColumnInfoCache.Entry entry = getDeclaredEntry();
+            if ( entry == null )
+            {
+                entry = lookupColumnInfos();
+            }
+
+            if ( current != null && current.entry != entry && current.entry.getFingerprint().equals( entry.getFingerprint() ) )
+            {
+                // Reloaded (e.g. time to live passed) but the same columns, SQL and statements stay valid.
+                current.entry = entry;
+            }
+            else if ( current == null || current.entry != entry )
+            {
+                // Column infos changed, SQL and statements built from the old ones are no longer valid.
+                if ( current != null )
+                {
+                    removeStatements( current );
+                }
+                current = new Plan( entry, buildBindCodecs( entry.getColumnInfos() ) );
+            }
+            plan = current;
+        }
+
+        return current;
+    }
+
+    private Map<String, BindCodec> buildBindCodecs( Map<String, ColumnInfo> columnInfos )
+        throws SQLException
+    {
+        Map<String, FieldDef> fieldDefs = BeanDefCache.getFieldDefs( beanClass );
+
+        Map<String, BindCodec> codecs = new HashMap<>();
+        synchronized ( bindCodecOverrides )
+        {
+            for ( String key : columnInfos.keySet() )
+            {
+                BindCodec codec = bindCodecOverrides.get( key );
+                if ( codec == null )
+                {
+                    FieldDef fieldDef = fieldDefs.get( key );
+                    ColumnInfo columnInfo = columnInfos.get( key );
+                    codec = BindCodecs.forColumn( columnInfo.getSqlType(), columnInfo.getTypeName(), fieldDef == null ? null : fieldDef.getValueClass(), coercer,
+                        driverFeatures );
+                }
+                codecs.put( key, codec );
+            }
+        }
+
+        return codecs;
+    }
+
+    /**
+     * @param plan current plan, or null if the columns are not known.
+     * @see #buildBasicSelectStatement
+     */
+    private String buildBasicSelect( Plan plan, String clause )
+        throws SQLException
+    {
+        String trimmedClause = "";
+        if ( clause != null && !clause.trim().isEmpty() )
+        {
+            trimmedClause = clause;
+        }
+
+        String selectList = "*";
+        if ( plan != null && PROJECTABLE_CLAUSE.matcher( trimmedClause ).lookingAt() )
+        {
+            if ( plan.selectList == null )
+            {
+                plan.selectList = buildSelectList( plan, BeanDefCache.getFieldDefs( beanClass ).keySet() );
+            }
+            selectList = plan.selectList;
+        }
+
+        return String.format( "select %s from %s %s", selectList, fullTableName, trimmedClause );
+    }
+
+    private String buildSelectList( Plan plan, Collection<String> keys )
+    {
+        StringBuilder selectList = new StringBuilder();
+        for ( String key : keys )
+        {
+            ColumnInfo columnInfo = plan.columnInfos.get( key );
+            if ( columnInfo != null )
+            {
+                selectList.append( selectList.length() == 0 ? "" : "," ).append( columnInfo.getRealName() );
+            }
+        }
+
+        return selectList.length() == 0 ? "*" : selectList.toString();
+    }
+
+    private String getKeyPredicate( Plan plan )
+        throws SQLException
+    {
+        StringBuilder predicate = new StringBuilder();
+        for ( String key : getPrimaryKeys() )
+        {
+            if ( predicate.length() > 0 )
+            {
+                predicate.append( " and " );
+            }
+            predicate.append( plan.columnInfos.get( key ).getRealName() );
+            predicate.append( "=?" );
+        }
+
+        return predicate.toString();
+    }
+
+    /**
+     * Drops the statements of the SQL of a replaced plan. Only idle statements are closed. Statements that calls still running with the old
+     * plan are using are left alone; they are put back in the cache when those calls close them and are then dropped by LRU eviction.
+     */
+    private void removeStatements( Plan oldPlan )
+        throws SQLException
+    {
+        if ( statementCache == null )
+        {
+            return;
+        }
+
+        if ( oldPlan.updateSql != null )
+        {
+            statementCache.remove( conn, oldPlan.updateSql );
+        }
+        if ( oldPlan.deleteSql != null )
+        {
+            statementCache.remove( conn, oldPlan.deleteSql );
+        }
+        if ( oldPlan.selectByKeySql != null )
+        {
+            statementCache.remove( conn, oldPlan.selectByKeySql );
+        }
+        if ( oldPlan.existsByKeySql != null )
+        {
+            statementCache.remove( conn, oldPlan.existsByKeySql );
+        }
+        for ( String sql : oldPlan.selectByKeysSql.values() )
+        {
+            statementCache.remove( conn, sql );
+        }
+        for ( String sql : oldPlan.scanSql.values() )
+        {
+            statementCache.remove( conn, sql );
+        }
+    }
+
+    private ColumnInfoCache.Entry getDeclaredEntry()
+        throws SQLException
+    {
+        if ( !useDeclaredColumnInfos )
+        {
+            return null;
+        }
+
+        if ( !declaredChecked )
+        {
+            HashMap<String, ColumnInfo> map = new HashMap<>();
+
+            Map<String, FieldDef> fieldDefs = BeanDefCache.getFieldDefs( beanClass );
+            for ( String key : fieldDefs.keySet() )
+            {
+                FieldDef fieldDef = fieldDefs.get( key );
+                if ( fieldDef.getSqlType() == null )
+                {
+                    // Not fully declared, the database meta data is needed.
+                    map = null;
+                    break;
+                }
+
+                map.put( key, new ColumnInfo( fieldDef.getColumnName(), fieldDef.getSqlType() ) );
+            }
+
+            declaredEntry = map == null || map.isEmpty() ? null : new ColumnInfoCache.Entry( map );
+            declaredChecked = true;
+        }
+
+        return declaredEntry;
+    }
+
+    private ColumnInfoCache.Entry lookupColumnInfos()
+        throws SQLException
+    {
+        databaseId = ColumnInfoCache.getDatabaseId( conn );
+
+        ColumnInfoCache.Entry entry = ColumnInfoCache.get( databaseId, schemaName, tableName );
+        if ( entry == null )
+        {
+            entry = ColumnInfoCache.put( databaseId, schemaName, tableName, readColumnInfos( conn ) );
+        }
+
+        return entry;
+    }
+
+    /**
+     * @return the primary keys in the column order of the primary key in the database, or in {@link #getPrimaryKeys()} order if that is not
+     * known (e.g. no connection or the bean marks other columns as keys).
+     */
+    private List<String> getScanKeys( Plan plan )
+        throws SQLException
+    {
+        if ( plan.scanKeys == null )
+        {
+            List<String> keys = getPrimaryKeys();
+            if ( keys.size() > 1 && conn != null )
+            {
+                List<String> dbKeys = readPrimaryKeyOrder( conn );
+                if ( dbKeys.size() == keys.size() && dbKeys.containsAll( keys ) )
+                {
+                    keys = Collections.unmodifiableList( dbKeys );
+                }
+            }
+            plan.scanKeys = keys;
+        }
+
+        return plan.scanKeys;
+    }
+
+    private List<String> readPrimaryKeyOrder( Connection conn )
         throws SQLException
     {
-        if ( columnInfos == null )
+        RealTableName real = getRealTableName( conn, tableName );
+        if ( real == null )
         {
-            cacheColumnInfos();
+            return Collections.emptyList();
         }
 
-        return columnInfos;
+        TreeMap<Short, String> keys = new TreeMap<>();
+        ResultSet rs = conn.getMetaData().getPrimaryKeys( null, real.schemaName, real.tableName );
+        while ( rs.next() )
+        {
+            keys.put( rs.getShort( KEY_SEQ ), rs.getString( COLUMN_NAME ).toLowerCase() );
+        }
+        rs.close();
+
+        return new ArrayList<>( keys.values() );
     }
 
     /**
      * This is a really slow method to call when it actually gets the meta data.
      */
-    private void cacheColumnInfos()
+    private Map<String, ColumnInfo> readColumnInfos( Connection conn )
         throws SQLException
     {
-        RealTableName real = getRealTableName( tableName );
+        RealTableName real = getRealTableName( conn, tableName );
 
         //
         // If the table does not actually exist optionally throw exception.
@@ -595,92 +1435,71 @@ public class Table<T>
         {
             String realName = rs.getString( COLUMN_NAME );
             Integer type = rs.getInt( DATA_TYPE );
+            String typeName = rs.getString( TYPE_NAME );
 
-            map.put( realName.toLowerCase(), new ColumnInfo( realName, type ) );
+            map.put( realName.toLowerCase(), new ColumnInfo( realName, type, typeName ) );
         }
         rs.close();
 
-        // Only set field if all went well
-        columnInfos = map;
+        return map;
     }
 
     /**
      * This takes a case insensitive tableName and searches for it in the connection's meta data to find the connections case sensitive tableName.
      */
-    private RealTableName getRealTableName( String tableName )
+    private RealTableName getRealTableName( Connection conn, String tableName )
         throws SQLException
     {
-        ArrayList<String> tableTypes = new ArrayList<>();
-
-        ResultSet rs = conn.getMetaData().getTableTypes();
-        while ( rs.next() )
-        {
-            if ( rs.getString( 1 ).toLowerCase().contains( "table" ) )
-            {
-                tableTypes.add( rs.getString( 1 ) );
-            }
-        }
-        rs.close();
-
-        RealTableName bean = searchForTable( tableTypes, schemaName, tableName );
-        if ( bean != null )
-        {
-            return bean;
-        }
+        String[] tableTypes = ColumnInfoCache.getTableTypes( ColumnInfoCache.getDatabaseId( conn ), conn );
 
-        if ( schemaName == null )
-        {
-            return null;
-        }
-
-        // Try schema all lowercase
-        bean = searchForTable( tableTypes, schemaName.toLowerCase(), tableName );
-        if ( bean != null )
+        RealTableName bean = searchForTable( conn, tableTypes, schemaName, tableName );
+        if ( bean != null || schemaName == null )
         {
             return bean;
         }
 
-        // Try schema all uppercase
-        return searchForTable( tableTypes, schemaName.toUpperCase(), tableName );
+        // Try schema all uppercase (schemaName is already all lowercase)
+        return searchForTable( conn, tableTypes, schemaName.toUpperCase(), tableName );
     }
 
-    private RealTableName searchForTable( List<String> tableTypes, String schemaName, String tableName )
+    /**
+     * Table name patterns are case sensitive, so try the likely cases before falling back to listing every table in the schema.
+     */
+    private RealTableName searchForTable( Connection conn, String[] tableTypes, String schemaName, String tableName )
         throws SQLException
     {
-        ResultSet rs = conn.getMetaData().getTables( null, schemaName, null, tableTypes.toArray( new String[tableTypes.size()] ) );
-        while ( rs.next() )
+        for ( String pattern : new String[] { tableName, tableName.toUpperCase(), null } )
         {
-            if ( rs.getString( TABLE_NAME ).equalsIgnoreCase( tableName ) )
+            ResultSet rs = conn.getMetaData().getTables( null, schemaName, pattern, tableTypes );
+            while ( rs.next() )
             {
-                RealTableName bean = new RealTableName();
-                bean.schemaName = rs.getString( SCHEMA_NAME );
-                bean.tableName = rs.getString( TABLE_NAME );
-                rs.close();
-                return bean;
+                if ( rs.getString( TABLE_NAME ).equalsIgnoreCase( tableName ) )
+                {
+                    RealTableName bean = new RealTableName();
+                    bean.schemaName = rs.getString( SCHEMA_NAME );
+                    bean.tableName = rs.getString( TABLE_NAME );
+                    rs.close();
+                    return bean;
+                }
             }
+            rs.close();
         }
-        rs.close();
 
         return null;
     }
 
-    private Object getFieldValueFromBean( Object bean, String key, ColumnInfo columnInfo )
-        throws FauxjoException
+    private void bindValue( Plan plan, PreparedStatement statement, int paramIndex, String key, Object val )
+        throws SQLException
     {
-        Class<?> targetClass = SqlTypeMapping.getJavaClass( columnInfo.getSqlType() );
-
-        Object val = readValue( bean, key );
         try
         {
-            val = coercer.convertTo( val, targetClass );
+            plan.bindCodecs.get( key ).bind( statement, paramIndex, val );
         }
         catch ( FauxjoException ex )
         {
-            throw new FauxjoException(
-                "Failed to coerce " + fullTableName + "." + columnInfo.getRealName() + " for insert: " + key + ":" + columnInfo.getRealName(), ex );
+            ColumnInfo columnInfo = plan.columnInfos.get( key );
+            throw new FauxjoException( "Failed to coerce " + fullTableName + "." + columnInfo.getRealName() + ": " + key, ex );
         }
-
-        return val;
     }
 
     private Object readValue( Object bean, String key )
@@ -695,13 +1514,13 @@ public class Table<T>
             {
                 field.setAccessible( true );
 
-                return field.get( bean );
+                return unwrapLazy( field.get( bean ) );
             }
 
             Method readMethod = beanDef.getReadMethod( key );
             if ( readMethod != null )
             {
-                return readMethod.invoke( bean );
+                return unwrapLazy( readMethod.invoke( bean ) );
             }
         }
         catch ( Exception ex )
@@ -717,6 +1536,29 @@ public class Table<T>
         return null;
     }
 
+    /**
+     * A {@link Lazy} that was never decoded is written back with its raw value if that is a plain String or byte[], saving the decode.
+     */
+    private Object unwrapLazy( Object value )
+    {
+        if ( !( value instanceof Lazy ) )
+        {
+            return value;
+        }
+
+        Lazy<?> lazy = (Lazy<?>) value;
+        if ( !lazy.isDecoded() )
+        {
+            Object raw = lazy.getRaw();
+            if ( raw instanceof String || raw instanceof byte[] )
+            {
+                return raw;
+            }
+        }
+
+        return lazy.get();
+    }
+
     private void setBeanValue( T bean, String key, Object value )
         throws FauxjoException
     {
@@ -764,6 +1606,19 @@ public class Table<T>
         }
     }
 
+    private String getSqlTypeName( int sqlType )
+    {
+        try
+        {
+            return JDBCType.valueOf( sqlType ).getName();
+        }
+        catch ( IllegalArgumentException ex )
+        {
+            // Vendor specific type.
+            return Integer.toString( sqlType );
+        }
+    }
+
     //    private String getTypeName( Object val )
     //    {
     //        String typeName = "varchar";
@@ -796,15 +1651,27 @@ public class Table<T>
     // Inner Classes
     // ============================================================
 
+    /**
+     * Immutable, instances are shared by all Tables through the {@link ColumnInfoCache}. Use {@link #withRealName} or {@link #withSqlType}
+     * for a changed copy.
+     */
     public static class ColumnInfo
     {
-        private String realName;
-        private int sqlType;
+        private final String realName;
+        private final int sqlType;
+        // Database specific type name (null if unknown).
+        private final String typeName;
 
         public ColumnInfo( String realName, int sqlType )
+        {
+            this( realName, sqlType, null );
+        }
+
+        public ColumnInfo( String realName, int sqlType, String typeName )
         {
             this.realName = realName;
             this.sqlType = sqlType;
+            this.typeName = typeName;
         }
 
         public String getRealName()
@@ -812,60 +1679,111 @@ public class Table<T>
             return realName;
         }
 
-        public void setRealName( String realName )
+        public int getSqlType()
         {
-            this.realName = realName;
+            return sqlType;
         }
 
-        public int getSqlType()
+        public String getTypeName()
         {
-            return sqlType;
+            return typeName;
         }
 
-        public void setSqlType( int sqlType )
+        /**
+         * @return copy of this column info with another real name, this one is left as it is.
+         */
+        public ColumnInfo withRealName( String realName )
         {
-            this.sqlType = sqlType;
+            return new ColumnInfo( realName, sqlType, typeName );
+        }
+
+        /**
+         * @return copy of this column info with another SQL type, this one is left as it is.
+         */
+        public ColumnInfo withSqlType( int sqlType )
+        {
+            return new ColumnInfo( realName, sqlType, typeName );
         }
     }
 
     private class DataValue
     {
+        private String key;
         private Object value;
-        private int sqlType;
 
-        public DataValue( Object value, int sqlType )
+        public DataValue( String key, Object value )
         {
+            this.key = key;
             this.value = value;
-            this.sqlType = sqlType;
+        }
+
+        public String getKey()
+        {
+            return key;
         }
 
         public Object getValue()
         {
             return value;
         }
+    }
 
-        public int getSqlType()
+    /**
+     * Immutable (apart from lazily built SQL) snapshot of everything derived from one version of the column infos. The entry is replaced
+     * by a reloaded one with the same fingerprint.
+     */
+    private static class Plan
+    {
+        private volatile ColumnInfoCache.Entry entry;
+        // Key = Lowercase column name (in source code, this is known as the "key").
+        // Value = ColumnInfo object that specifies the type and real column name.
+        private Map<String, ColumnInfo> columnInfos;
+        // Key = Lowercase column name.
+        // Value = Codec that converts and binds the bean values of the column.
+        private Map<String, BindCodec> bindCodecs;
+        private volatile String updateSql;
+        private volatile String deleteSql;
+        private volatile String selectByKeySql;
+        private volatile String existsByKeySql;
+        private volatile String selectList;
+        // Primary keys in the column order of the primary key in the database.
+        private volatile List<String> scanKeys;
+        // Key = Number of keys.
+        private Map<Integer, String> selectByKeysSql = new ConcurrentHashMap<>();
+        // Key = Whether after a key + page size + filter.
+        private Map<String, String> scanSql = new ConcurrentHashMap<>();
+
+        public Plan( ColumnInfoCache.Entry entry, Map<String, BindCodec> bindCodecs )
         {
-            return sqlType;
+            this.entry = entry;
+            columnInfos = entry.getColumnInfos();
+            this.bindCodecs = bindCodecs;
         }
     }
 
     private class InsertDef
     {
+        private Plan plan;
         private String insertPart;
         private String valuesPart;
         // Number of questionmark sets to add to statement.
         private int rowCount;
         private Collection<String> generatedKeys;
 
-        public InsertDef( String insertPart, String valuesPart, Collection<String> generatedKeys )
+        public InsertDef( Plan plan, String insertPart, String valuesPart, Collection<String> generatedKeys )
         {
+            this.plan = plan;
             this.insertPart = insertPart;
             this.valuesPart = valuesPart;
             this.generatedKeys = generatedKeys;
             rowCount = 1;
         }
 
+        public Plan getPlan()
+        {
+            return plan;
+        }
+
         public String getInsertPart()
         {
             return insertPart;
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) jextra.net.
+ *
+ * This file is part of the jextra.net software.
+ *
+ * The jextra software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * The jextra software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with the jextra software; if not, write to the Free
+ * Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA
+ * 02111-1307 USA.
+ */
+
+
+package net.jextra.fauxjo;
+
+import java.sql.*;
+
+/**
+ * Wraps a {@link SQLException} where an interface does not allow checked exceptions (Iterators, Spliterators, Stream close handlers,
+ * {@link Lazy#get()}), so callers can catch it by type and get the original exception from {@link #getCause()}.
+ */
+public class UncheckedSQLException extends RuntimeException
+{
+    // ============================================================
+    // Fields
+    // ============================================================
+
+    private static final long serialVersionUID = 1L;
+
+    // ============================================================
+    // Constructors
+    // ============================================================
+
+    public UncheckedSQLException( SQLException cause )
+    {
+        super( cause );
+    }
+
+    public UncheckedSQLException( String message, SQLException cause )
+    {
+        super( message, cause );
+    }
+
+    // ============================================================
+    // Methods
+    // ============================================================
+
+    // ----------
+    // public
+    // ----------
+
+    @Override
+    public synchronized SQLException getCause()
+    {
+        return (SQLException) super.getCause();
+    }
+}
@@ -33,8 +33,14 @@ import java.lang.annotation.*;
 @Target( ElementType.FIELD )
 public @interface FauxjoField
 {
+    // Marker value of sqlType when the type of the column is not declared.
+    int UNDECLARED = Integer.MIN_VALUE;
+
     // Column in database.
     String value();
 
     boolean defaultable() default false;
+
+    // Optional java.sql.Types of the column. If all columns of a bean declare their type, Table does not need the database meta data.
+    int sqlType() default UNDECLARED;
 }
@@ -38,4 +38,7 @@ public @interface FauxjoGetter
 {
     // Column in the database for insert,update statements.
     String value();
+
+    // Optional java.sql.Types of the column. If all columns of a bean declare their type, Table does not need the database meta data.
+    int sqlType() default FauxjoField.UNDECLARED;
 }
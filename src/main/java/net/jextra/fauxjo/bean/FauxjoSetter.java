@@ -37,4 +37,7 @@ public @interface FauxjoSetter
 {
     // Column in the database from select statement.
     String value();
+
+    // Optional java.sql.Types of the column. If all columns of a bean declare their type, Table does not need the database meta data.
+    int sqlType() default FauxjoField.UNDECLARED;
 }
@@ -95,6 +95,11 @@ public class BeanDefCache
 
                 FieldDef fieldDef = beanDef.addField( key, field );
                 fieldDef.setDefaultable( ann.defaultable() );
+                fieldDef.setColumnName( key );
+                if ( ann.sqlType() != FauxjoField.UNDECLARED )
+                {
+                    fieldDef.setSqlType( ann.sqlType() );
+                }
 
                 //
                 // Check if FauxjoPrimaryKey.
@@ -123,6 +128,14 @@ public class BeanDefCache
                         }
 
                         beanDef.addWriteMethod( key, prop.getWriteMethod() );
+                        if ( beanDef.getFieldDef( key ).getColumnName() == null )
+                        {
+                            beanDef.getFieldDef( key ).setColumnName( key );
+                        }
+                        if ( ann.sqlType() != FauxjoField.UNDECLARED )
+                        {
+                            beanDef.getFieldDef( key ).setSqlType( ann.sqlType() );
+                        }
                     }
                 }
 
@@ -141,6 +154,11 @@ public class BeanDefCache
                         }
 
                         beanDef.addReadMethod( key, prop.getReadMethod() );
+                        beanDef.getFieldDef( key ).setColumnName( key );
+                        if ( ann.sqlType() != FauxjoField.UNDECLARED )
+                        {
+                            beanDef.getFieldDef( key ).setSqlType( ann.sqlType() );
+                        }
 
                         //
                         // Check if FauxjoPrimaryKey.
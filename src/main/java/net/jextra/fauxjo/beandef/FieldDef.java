@@ -36,6 +36,8 @@ public class FieldDef
     private Class<?> valueClass;
     private boolean primaryKey;
     private boolean defaultable;
+    private String columnName;
+    private Integer sqlType;
 
     // ============================================================
     // Constructors
@@ -135,6 +137,27 @@ public class FieldDef
         return valueClass;
     }
 
+    /**
+     * @return the generic type of the field (or write/read method), e.g. to find T of a {@link Lazy}&lt;T&gt; property.
+     */
+    public Type getValueType()
+    {
+        if ( field != null )
+        {
+            return field.getGenericType();
+        }
+        else if ( writeMethod != null )
+        {
+            return writeMethod.getGenericParameterTypes()[0];
+        }
+        else if ( readMethod != null )
+        {
+            return readMethod.getGenericReturnType();
+        }
+
+        return valueClass;
+    }
+
     public void setValueClass( Class<?> valueClass )
     {
         this.valueClass = valueClass;
@@ -149,4 +172,30 @@ public class FieldDef
     {
         this.defaultable = defaultable;
     }
+
+    /**
+     * @return name of the column as written in the annotation.
+     */
+    public String getColumnName()
+    {
+        return columnName;
+    }
+
+    public void setColumnName( String columnName )
+    {
+        this.columnName = columnName;
+    }
+
+    /**
+     * @return java.sql.Types declared in the annotation or null if not declared.
+     */
+    public Integer getSqlType()
+    {
+        return sqlType;
+    }
+
+    public void setSqlType( Integer sqlType )
+    {
+        this.sqlType = sqlType;
+    }
 }
@@ -58,7 +58,26 @@ public class BigDecimalCoercer implements TypeCoercer<BigDecimal>
         {
             return value.toBigInteger();
         }
+        else if ( targetClass.equals( Double.class ) )
+        {
+            return value.doubleValue();
+        }
 
         throw new FauxjoException( String.format( ERROR_MSG, getClass().getName(), targetClass ) );
     }
+
+    @Override
+    public Converter getConverter( Class<?> targetClass )
+    {
+        if ( targetClass.equals( Integer.class ) )
+        {
+            return value -> ( (BigDecimal) value ).intValue();
+        }
+        else if ( targetClass.equals( Long.class ) )
+        {
+            return value -> ( (BigDecimal) value ).longValue();
+        }
+
+        return TypeCoercer.super.getConverter( targetClass );
+    }
 }
@@ -24,6 +24,7 @@ package net.jextra.fauxjo.coercer;
 import java.math.*;
 import java.time.*;
 import java.util.*;
+import java.util.concurrent.*;
 import net.jextra.fauxjo.*;
 
 /**
@@ -38,6 +39,12 @@ public class Coercer
 
     private Map<Class<?>, TypeCoercer<?>> coercerMap = new HashMap<>();
 
+    // Key = Source class.
+    // Value = Converter by target class. Cleared whenever a TypeCoercer is added. Owned by this Coercer (not a ClassValue, whose values
+    // are pinned by the class and would keep every Coercer alive).
+    private Map<Class<?>, Map<Class<?>, Converter>> converters = new ConcurrentHashMap<>();
+    private volatile int generation;
+
     // ============================================================
     // Constructors
     // ============================================================
@@ -59,6 +66,8 @@ public class Coercer
         coercerMap.put( java.sql.Timestamp.class, new TimestampCoercer() );
         coercerMap.put( Instant.class, new InstantCoercer() );
         coercerMap.put( UUID.class, new UuidCoercer() );
+        coercerMap.put( byte[].class, new ByteArrayCoercer() );
+        coercerMap.put( Enum.class, new EnumCoercer() );
     }
 
     // ============================================================
@@ -72,6 +81,8 @@ public class Coercer
     public <T> void addTypeCoercer( Class<T> coercerClass, TypeCoercer<T> coercer )
     {
         coercerMap.put( (Class<?>) coercerClass, (TypeCoercer<?>) coercer );
+        converters.clear();
+        generation++;
     }
 
     @SuppressWarnings( "unchecked" )
@@ -80,7 +91,6 @@ public class Coercer
         return (TypeCoercer<T>) coercerMap.get( coercerClass );
     }
 
-    @SuppressWarnings( "unchecked" )
     public <T> Object convertTo( T value, Class<?> targetClass )
         throws FauxjoException
     {
@@ -90,56 +100,114 @@ public class Coercer
             return null;
         }
 
-        if ( targetClass.isPrimitive() )
+        return getConverter( value.getClass(), targetClass ).convert( value );
+    }
+
+    /**
+     * @return the converter from sourceClass to targetClass, resolved once per pair and then cached. A null targetClass converts to
+     * Object.
+     */
+    public Converter getConverter( Class<?> sourceClass, Class<?> targetClass )
+    {
+        Class<?> target = targetClass == null ? Object.class : targetClass;
+
+        Map<Class<?>, Converter> bySource = converters.get( sourceClass );
+        if ( bySource == null )
         {
-            if ( targetClass == Boolean.TYPE )
-            {
-                targetClass = Boolean.class;
-            }
-            else if ( targetClass == Byte.TYPE )
-            {
-                targetClass = Byte.class;
-            }
-            else if ( targetClass == Character.TYPE )
-            {
-                targetClass = Character.class;
-            }
-            else if ( targetClass == Double.TYPE )
-            {
-                targetClass = Double.class;
-            }
-            else if ( targetClass == Float.TYPE )
-            {
-                targetClass = Float.class;
-            }
-            else if ( targetClass == Integer.TYPE )
-            {
-                targetClass = Integer.class;
-            }
-            else if ( targetClass == Long.TYPE )
-            {
-                targetClass = Long.class;
-            }
-            else if ( targetClass == Short.TYPE )
-            {
-                targetClass = Short.class;
-            }
+            bySource = converters.computeIfAbsent( sourceClass, k -> new ConcurrentHashMap<>() );
         }
 
+        Converter converter = bySource.get( target );
+        if ( converter == null )
+        {
+            converter = resolveConverter( sourceClass, target );
+            bySource.putIfAbsent( target, converter );
+        }
+
+        return converter;
+    }
+
+    // ----------
+    // package
+    // ----------
+
+    int getGeneration()
+    {
+        return generation;
+    }
+
+    // ----------
+    // private
+    // ----------
+
+    @SuppressWarnings( "unchecked" )
+    private Converter resolveConverter( Class<?> sourceClass, Class<?> targetClass )
+    {
+        targetClass = toWrapperClass( targetClass );
+
         // Short-circuit if given value is the same as the target class
-        if ( value.getClass().equals( targetClass ) )
+        if ( sourceClass.equals( targetClass ) )
         {
-            return value;
+            return Converter.IDENTITY;
         }
 
-        TypeCoercer<T> coercer = (TypeCoercer<T>) coercerMap.get( value.getClass() );
+        TypeCoercer<Object> coercer = (TypeCoercer<Object>) coercerMap.get( sourceClass );
+
+        // All enums share one coercer (getClass of a constant with a body is a subclass of the enum).
+        if ( coercer == null && Enum.class.isAssignableFrom( sourceClass ) )
+        {
+            coercer = (TypeCoercer<Object>) coercerMap.get( Enum.class );
+        }
 
         // Use default coercer if none is found
         if ( coercer == null )
         {
-            coercer = (TypeCoercer<T>) coercerMap.get( Object.class );
+            coercer = (TypeCoercer<Object>) coercerMap.get( Object.class );
+        }
+
+        return coercer.getConverter( targetClass );
+    }
+
+    private static Class<?> toWrapperClass( Class<?> targetClass )
+    {
+        if ( !targetClass.isPrimitive() )
+        {
+            return targetClass;
+        }
+
+        if ( targetClass == Boolean.TYPE )
+        {
+            return Boolean.class;
+        }
+        else if ( targetClass == Byte.TYPE )
+        {
+            return Byte.class;
+        }
+        else if ( targetClass == Character.TYPE )
+        {
+            return Character.class;
+        }
+        else if ( targetClass == Double.TYPE )
+        {
+            return Double.class;
+        }
+        else if ( targetClass == Float.TYPE )
+        {
+            return Float.class;
+        }
+        else if ( targetClass == Integer.TYPE )
+        {
+            return Integer.class;
+        }
+        else if ( targetClass == Long.TYPE )
+        {
+            return Long.class;
+        }
+        else if ( targetClass == Short.TYPE )
+        {
+            return Short.class;
         }
 
-        return coercer.convertTo( value, targetClass );
+        return targetClass;
     }
 }
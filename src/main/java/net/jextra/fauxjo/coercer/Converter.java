@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) jextra.net.
+ *
+ * This file is part of the jextra.net software.
+ *
+ * The jextra software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * The jextra software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with the jextra software; if not, write to the Free
+ * Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA
+ * 02111-1307 USA.
+ */
+
+package net.jextra.fauxjo.coercer;
+
+import net.jextra.fauxjo.*;
+
+/**
+ * Converts values of one known source class to one known target class. Resolved once per (source, target) pair by {@link Coercer} so the
+ * per value cost is a direct call.
+ */
+public interface Converter
+{
+    // ============================================================
+    // Fields
+    // ============================================================
+
+    Converter IDENTITY = value -> value;
+
+    // ============================================================
+    // Methods
+    // ============================================================
+
+    // ----------
+    // public
+    // ----------
+
+    Object convert( Object value )
+        throws FauxjoException;
+}
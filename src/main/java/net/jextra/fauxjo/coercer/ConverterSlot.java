@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) jextra.net.
+ *
+ * This file is part of the jextra.net software.
+ *
+ * The jextra software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * The jextra software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with the jextra software; if not, write to the Free
+ * Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA
+ * 02111-1307 USA.
+ */
+
+package net.jextra.fauxjo.coercer;
+
+import net.jextra.fauxjo.*;
+
+/**
+ * Converts the values of one column to a fixed target class. Remembers the converter of the last source class seen so that the usual case of
+ * a column always returning the same class skips the {@link Coercer} lookup.
+ */
+public class ConverterSlot
+{
+    // ============================================================
+    // Fields
+    // ============================================================
+
+    private Coercer coercer;
+    private Class<?> targetClass;
+    // Replaced as a whole so that concurrent callers never see a source class paired with another class's converter.
+    private volatile Resolved resolved;
+
+    // ============================================================
+    // Constructors
+    // ============================================================
+
+    public ConverterSlot( Coercer coercer, Class<?> targetClass )
+    {
+        this.coercer = coercer;
+        this.targetClass = targetClass;
+    }
+
+    // ============================================================
+    // Methods
+    // ============================================================
+
+    // ----------
+    // public
+    // ----------
+
+    public Class<?> getTargetClass()
+    {
+        return targetClass;
+    }
+
+    public Object convert( Object value )
+        throws FauxjoException
+    {
+        if ( value == null )
+        {
+            return null;
+        }
+
+        Class<?> sourceClass = value.getClass();
+        Resolved current = resolved;
+        if ( current == null || current.sourceClass != sourceClass || current.generation != coercer.getGeneration() )
+        {
+            current = new Resolved( sourceClass, coercer.getGeneration(), coercer.getConverter( sourceClass, targetClass ) );
+            resolved = current;
+        }
+
+        return current.converter.convert( value );
+    }
+
+    // ============================================================
+    // Inner Classes
+    // ============================================================
+
+    private static class Resolved
+    {
+        private Class<?> sourceClass;
+        private int generation;
+        private Converter converter;
+
+        public Resolved( Class<?> sourceClass, int generation, Converter converter )
+        {
+            this.sourceClass = sourceClass;
+            this.generation = generation;
+            this.converter = converter;
+        }
+    }
+}
@@ -21,6 +21,7 @@
 
 package net.jextra.fauxjo.coercer;
 
+import java.math.*;
 import net.jextra.fauxjo.*;
 
 public class DoubleCoercer implements TypeCoercer<Double>
@@ -43,6 +44,10 @@ public class DoubleCoercer implements TypeCoercer<Double>
 
             return value.floatValue();
         }
+        else if ( targetClass.equals( BigDecimal.class ) )
+        {
+            return BigDecimal.valueOf( value );
+        }
 
         throw new FauxjoException( String.format( ERROR_MSG, getClass().getName(), targetClass ) );
     }
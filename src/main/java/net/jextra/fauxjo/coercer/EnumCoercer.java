@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) jextra.net.
+ *
+ * This file is part of the jextra.net software.
+ *
+ * The jextra software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * The jextra software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with the jextra software; if not, write to the Free
+ * Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA
+ * 02111-1307 USA.
+ */
+
+package net.jextra.fauxjo.coercer;
+
+import net.jextra.fauxjo.*;
+
+/**
+ * Used for all enum classes. Enums are stored by name in character columns and by ordinal in integer columns.
+ */
+public class EnumCoercer implements TypeCoercer<Enum<?>>
+{
+    // ============================================================
+    // Methods
+    // ============================================================
+
+    // ----------
+    // public
+    // ----------
+
+    @Override
+    public Object convertTo( Enum<?> value, Class<?> targetClass )
+        throws FauxjoException
+    {
+        if ( targetClass.equals( String.class ) )
+        {
+            return value.name();
+        }
+        else if ( targetClass.equals( Integer.class ) )
+        {
+            return value.ordinal();
+        }
+        else if ( targetClass.equals( Short.class ) )
+        {
+            return (short) value.ordinal();
+        }
+        else if ( targetClass.equals( Long.class ) )
+        {
+            return (long) value.ordinal();
+        }
+        else if ( targetClass.isInstance( value ) )
+        {
+            return value;
+        }
+
+        throw new FauxjoException( String.format( ERROR_MSG, getClass().getName(), targetClass ) );
+    }
+
+    /**
+     * @return the constant of the given enum class with the given ordinal.
+     */
+    public static Object fromOrdinal( Class<?> enumClass, int ordinal )
+        throws FauxjoException
+    {
+        Object[] constants = enumClass.getEnumConstants();
+        if ( ordinal < 0 || ordinal >= constants.length )
+        {
+            throw new FauxjoException( "Ordinal " + ordinal + " is out of range for enum [" + enumClass.getName() + "]" );
+        }
+
+        return constants[ordinal];
+    }
+}
@@ -21,6 +21,7 @@
 
 package net.jextra.fauxjo.coercer;
 
+import java.math.*;
 import net.jextra.fauxjo.*;
 
 public class FloatCoercer implements TypeCoercer<Float>
@@ -41,6 +42,10 @@ public class FloatCoercer implements TypeCoercer<Float>
         {
             return value.doubleValue();
         }
+        else if ( targetClass.equals( BigDecimal.class ) )
+        {
+            return new BigDecimal( value.toString() );
+        }
 
         throw new FauxjoException( String.format( ERROR_MSG, getClass().getName(), targetClass ) );
     }
@@ -21,6 +21,7 @@
 
 package net.jextra.fauxjo.coercer;
 
+import java.math.*;
 import net.jextra.fauxjo.*;
 
 public class IntegerCoercer implements TypeCoercer<Integer>
@@ -63,8 +64,45 @@ public class IntegerCoercer implements TypeCoercer<Integer>
         {
             return value.toString();
         }
+        else if ( targetClass.equals( BigDecimal.class ) )
+        {
+            return BigDecimal.valueOf( value );
+        }
+        else if ( targetClass.isEnum() )
+        {
+            return EnumCoercer.fromOrdinal( targetClass, value );
+        }
 
         throw new FauxjoException( String.format( ERROR_MSG, getClass().getName(), targetClass ) );
     }
 
+    @Override
+    public Converter getConverter( Class<?> targetClass )
+    {
+        if ( targetClass.equals( Long.class ) )
+        {
+            return value -> ( (Integer) value ).longValue();
+        }
+        else if ( targetClass.equals( Double.class ) )
+        {
+            return value -> ( (Integer) value ).doubleValue();
+        }
+        else if ( targetClass.equals( String.class ) )
+        {
+            return Object::toString;
+        }
+        else if ( targetClass.isEnum() )
+        {
+            Object[] constants = targetClass.getEnumConstants();
+
+            return value ->
+            {
+                int ordinal = (Integer) value;
+
+                return ordinal >= 0 && ordinal < constants.length ? constants[ordinal] : EnumCoercer.fromOrdinal( targetClass, ordinal );
+            };
+        }
+
+        return TypeCoercer.super.getConverter( targetClass );
+    }
 }
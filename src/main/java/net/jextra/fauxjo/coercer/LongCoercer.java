@@ -21,6 +21,7 @@
 
 package net.jextra.fauxjo.coercer;
 
+import java.math.*;
 import net.jextra.fauxjo.*;
 
 public class LongCoercer implements TypeCoercer<Long>
@@ -60,8 +61,35 @@ public class LongCoercer implements TypeCoercer<Long>
         {
             return (double) value;
         }
+        else if ( targetClass.equals( BigDecimal.class ) )
+        {
+            return BigDecimal.valueOf( value );
+        }
+        else if ( targetClass.isEnum() )
+        {
+            return EnumCoercer.fromOrdinal( targetClass, value.intValue() );
+        }
 
         throw new FauxjoException( String.format( ERROR_MSG, getClass().getName(), targetClass ) );
     }
 
+    @Override
+    public Converter getConverter( Class<?> targetClass )
+    {
+        if ( targetClass.equals( Integer.class ) )
+        {
+            return value ->
+            {
+                long l = (Long) value;
+                assert l <= Integer.MAX_VALUE && l >= Integer.MIN_VALUE;
+                return (int) l;
+            };
+        }
+        else if ( targetClass.equals( Double.class ) )
+        {
+            return value -> ( (Long) value ).doubleValue();
+        }
+
+        return TypeCoercer.super.getConverter( targetClass );
+    }
 }
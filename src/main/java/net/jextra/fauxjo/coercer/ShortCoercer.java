@@ -21,6 +21,7 @@
 
 package net.jextra.fauxjo.coercer;
 
+import java.math.*;
 import net.jextra.fauxjo.*;
 
 public class ShortCoercer implements TypeCoercer<Short>
@@ -50,6 +51,14 @@ public class ShortCoercer implements TypeCoercer<Short>
         {
             return value.longValue();
         }
+        else if ( targetClass.equals( BigDecimal.class ) )
+        {
+            return BigDecimal.valueOf( value );
+        }
+        else if ( targetClass.isEnum() )
+        {
+            return EnumCoercer.fromOrdinal( targetClass, value );
+        }
 
         throw new FauxjoException( String.format( ERROR_MSG, getClass().getName(), targetClass ) );
     }
@@ -21,8 +21,11 @@
 
 package net.jextra.fauxjo.coercer;
 
+import java.math.*;
+import java.nio.charset.*;
 import java.sql.*;
 import java.time.*;
+import java.util.*;
 import net.jextra.fauxjo.*;
 
 public class StringCoercer implements TypeCoercer<String>
@@ -71,6 +74,14 @@ public class StringCoercer implements TypeCoercer<String>
         {
             return Timestamp.valueOf( value ).toInstant();
         }
+        else if ( targetClass.equals( byte[].class ) )
+        {
+            return value.getBytes( StandardCharsets.UTF_8 );
+        }
+        else if ( targetClass.equals( UUID.class ) )
+        {
+            return UUID.fromString( value );
+        }
         else if ( targetClass.isEnum() )
         {
             @SuppressWarnings( "unchecked" )
@@ -84,7 +95,46 @@ public class StringCoercer implements TypeCoercer<String>
         {
             return value;
         }
+        else if ( targetClass.equals( BigDecimal.class ) )
+        {
+            return new BigDecimal( value );
+        }
 
         throw new FauxjoException( String.format( ERROR_MSG, getClass().getName(), targetClass ) );
     }
+
+    @Override
+    public Converter getConverter( Class<?> targetClass )
+    {
+        if ( targetClass.equals( Integer.class ) )
+        {
+            return value -> Integer.parseInt( (String) value );
+        }
+        else if ( targetClass.equals( Long.class ) )
+        {
+            return value -> Long.parseLong( (String) value );
+        }
+        else if ( targetClass.equals( Object.class ) )
+        {
+            return Converter.IDENTITY;
+        }
+        else if ( targetClass.isEnum() )
+        {
+            // Name to constant map built once instead of Enum.valueOf for every value.
+            Map<String, Object> constants = new HashMap<>();
+            for ( Object constant : targetClass.getEnumConstants() )
+            {
+                constants.put( ( (Enum<?>) constant ).name(), constant );
+            }
+
+            return value ->
+            {
+                Object constant = constants.get( value );
+
+                return constant != null ? constant : convertTo( (String) value, targetClass );
+            };
+        }
+
+        return TypeCoercer.super.getConverter( targetClass );
+    }
 }
@@ -66,4 +66,19 @@ public class TimestampCoercer implements TypeCoercer<Timestamp>
 
         throw new FauxjoException( String.format( ERROR_MSG, getClass().getName(), targetClass ) );
     }
+
+    @Override
+    public Converter getConverter( Class<?> targetClass )
+    {
+        if ( targetClass.equals( Instant.class ) )
+        {
+            return value -> ( (Timestamp) value ).toInstant();
+        }
+        else if ( targetClass.equals( LocalDateTime.class ) )
+        {
+            return value -> ( (Timestamp) value ).toLocalDateTime();
+        }
+
+        return TypeCoercer.super.getConverter( targetClass );
+    }
 }
@@ -47,4 +47,14 @@ public interface TypeCoercer<T>
 
     Object convertTo( T value, Class<?> targetClass )
         throws FauxjoException;
+
+    /**
+     * @return converter of values of this coercer's type to the given (non primitive) target class. Override to hand out direct conversions
+     * for common targets instead of going through {@link #convertTo} each time.
+     */
+    @SuppressWarnings( "unchecked" )
+    default Converter getConverter( Class<?> targetClass )
+    {
+        return value -> convertTo( (T) value, targetClass );
+    }
 }
@@ -42,6 +42,10 @@ public class UuidCoercer implements TypeCoercer<UUID>
         {
             return value.toString();
         }
+        else if ( targetClass.equals( byte[].class ) )
+        {
+            return toBytes( value );
+        }
         else if ( targetClass.equals( Object.class ) )
         {
             return value;
@@ -50,4 +54,39 @@ public class UuidCoercer implements TypeCoercer<UUID>
         throw new FauxjoException( String.format( ERROR_MSG, getClass().getName(), targetClass ) );
     }
 
+    /**
+     * @return the 16 bytes of the UUID, most significant first (the layout of BINARY(16) UUID columns).
+     */
+    public static byte[] toBytes( UUID value )
+    {
+        byte[] bytes = new byte[16];
+        long msb = value.getMostSignificantBits();
+        long lsb = value.getLeastSignificantBits();
+        for ( int i = 0; i < 8; i++ )
+        {
+            bytes[i] = (byte) ( msb >>> ( 56 - 8 * i ) );
+            bytes[8 + i] = (byte) ( lsb >>> ( 56 - 8 * i ) );
+        }
+
+        return bytes;
+    }
+
+    public static UUID fromBytes( byte[] bytes )
+        throws FauxjoException
+    {
+        if ( bytes.length != 16 )
+        {
+            throw new FauxjoException( "A UUID needs 16 bytes, not " + bytes.length );
+        }
+
+        long msb = 0;
+        long lsb = 0;
+        for ( int i = 0; i < 8; i++ )
+        {
+            msb = ( msb << 8 ) | ( bytes[i] & 0xff );
+            lsb = ( lsb << 8 ) | ( bytes[8 + i] & 0xff );
+        }
+
+        return new UUID( msb, lsb );
+    }
 }
@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) jextra.net.
+ *
+ * This file is part of the jextra.net software.
+ *
+ * The jextra software is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * The jextra software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with the jextra software; if not, write to the Free
+ * Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA
+ * 02111-1307 USA.
+ */
+
+
+package net.jextra.fauxjo;
+
+import static org.junit.Assert.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import org.junit.*;
+
+public class EntityCacheTest
+{
+    // ============================================================
+    // Fields
+    // ============================================================
+
+    private AtomicLong now;
+    private Map<List<Object>, Integer> loads;
+
+    // ============================================================
+    // Methods
+    // ============================================================
+
+    // ----------
+    // public
+    // ----------
+
+    @Before
+    public void setUp()
+    {
+        now = new AtomicLong();
+        loads = new HashMap<>();
+    }
+
+    @Test
+    public void newEntryMovesFromWindowToProbationToProtected()
+        throws Exception
+    {
+        EntityCache<String> cache = newCache( 100 );
+
+        cache.get( key( "a" ), this::load );
+        assertEquals( EntityCache.Region.WINDOW, cache.getRegion( key( "a" ) ) );
+
+        // The window holds one entry, the next one pushes "a" into the main area.
+        cache.get( key( "b" ), this::load );
+        assertEquals( EntityCache.Region.WINDOW, cache.getRegion( key( "b" ) ) );
+        assertEquals( EntityCache.Region.PROBATION, cache.getRegion( key( "a" ) ) );
+
+        // Used again while on probation.
+        assertEquals( "a", cache.get( key( "a" ), this::load ) );
+        assertEquals( EntityCache.Region.PROTECTED, cache.getRegion( key( "a" ) ) );
+        assertEquals( 1, loadCount( "a" ) );
+    }
+
+    @Test
+    public void oneOffKeysDoNotEvictFrequentlyUsedOnes()
+        throws Exception
+    {
+        EntityCache<String> cache = newCache( 100 );
+        for ( int i = 0; i < 100; i++ )
+        {
+            cache.get( key( "k" + i ), this::load );
+        }
+        for ( int round = 0; round < 5; round++ )
+        {
+            for ( int i = 0; i < 100; i++ )
+            {
+                cache.get( key( "k" + i ), this::load );
+            }
+        }
+
+        for ( int i = 0; i < 200; i++ )
+        {
+            cache.get( key( "x" + i ), this::load );
+        }
+
+        int frequentCached = 0;
+        for ( int i = 0; i < 100; i++ )
+        {
+            if ( cache.getRegion( key( "k" + i ) ) != null )
+            {
+                frequentCached++;
+            }
+        }
+        int oneOffCached = 0;
+        for ( int i = 0; i < 200; i++ )
+        {
+            if ( cache.getRegion( key( "x" + i ) ) != null )
+            {
+                oneOffCached++;
+            }
+        }
+
+        // A plain LRU cache would keep none of the frequent keys. The frequency sketch is approximate, so a few one-off keys that collide with
+        // frequent ones still get in.
+        String counts = "frequent keys cached: " + frequentCached + ", one-off keys cached: " + oneOffCached;
+        assertTrue( counts, frequentCached >= 80 );
+        assertTrue( counts, oneOffCached <= 20 );
+        assertEquals( 100, cache.size() );
+    }
+
+    @Test
+    public void frequentlyUsedNewKeyIsAdmitted()
+        throws Exception
+    {
+        EntityCache<String> cache = newCache( 100 );
+        for ( int i = 0; i < 100; i++ )
+        {
+            cache.get( key( "k" + i ), this::load );
+        }
+
+        cache.get( key( "hot" ), this::load );
+        for ( int i = 0; i < 10; i++ )
+        {
+            cache.get( key( "hot" ), this::load );
+        }
+        long evictions = cache.getEvictionCount();
+
+        // Pushes "hot" out of the window, it is used more often than any entry of the main area.
+        cache.get( key( "next" ), this::load );
+
+        assertEquals( EntityCache.Region.PROBATION, cache.getRegion( key( "hot" ) ) );
+        assertEquals( evictions + 1, cache.getEvictionCount() );
+        assertEquals( 100, cache.size() );
+        assertEquals( 1, loadCount( "hot" ) );
+    }
+
+    @Test
+    public void entryExpiresAfterTimeToLive()
+        throws Exception
+    {
+        EntityCache<String> cache = newCache( 10 );
+        cache.setTimeToLive( 10, TimeUnit.SECONDS );
+
+        cache.get( key( "a" ), this::load );
+        now.addAndGet( TimeUnit.SECONDS.toNanos( 9 ) );
+        cache.get( key( "a" ), this::load );
+        assertEquals( 1, loadCount( "a" ) );
+
+        now.addAndGet( TimeUnit.SECONDS.toNanos( 2 ) );
+        cache.get( key( "a" ), this::load );
+        assertEquals( 2, loadCount( "a" ) );
+        assertEquals( 1, cache.getExpirationCount() );
+    }
+
+    @Test
+    public void missingKeyIsOnlyCachedWithNegativeTimeToLive()
+        throws Exception
+    {
+        EntityCache<String> cache = newCache( 10 );
+
+        assertNull( cache.get( key( "none" ), this::loadNothing ) );
+        assertNull( cache.get( key( "none" ), this::loadNothing ) );
+        assertEquals( 2, loadCount( "none" ) );
+
+        cache.setNegativeTimeToLive( 5, TimeUnit.SECONDS );
+        assertNull( cache.get( key( "none" ), this::loadNothing ) );
+        assertNull( cache.get( key( "none" ), this::loadNothing ) );
+        assertEquals( 3, loadCount( "none" ) );
+        assertEquals( 1, cache.getNegativeHitCount() );
+
+        now.addAndGet( TimeUnit.SECONDS.toNanos( 6 ) );
+        assertNull( cache.get( key( "none" ), this::loadNothing ) );
+        assertEquals( 4, loadCount( "none" ) );
+    }
+
+    @Test
+    public void invalidateMakesNextLookupReload()
+        throws Exception
+    {
+        EntityCache<String> cache = newCache( 10 );
+
+        cache.get( key( "a" ), this::load );
+        cache.invalidate( key( "a" ) );
+        assertNull( cache.getRegion( key( "a" ) ) );
+
+        cache.get( key( "a" ), this::load );
+        assertEquals( 2, loadCount( "a" ) );
+    }
+
+    @Test
+    public void loadOverlappingWriteOfItsKeyIsNotCached()
+        throws Exception
+    {
+        EntityCache<String> cache = newCache( 10 );
+
+        // The row is written (and its key invalidated) while it is being read.
+        String bean = cache.get( key( "a" ), k ->
+        {
+            cache.invalidate( k );
+            return load( k );
+        } );
+
+        assertEquals( "a", bean );
+        assertNull( cache.getRegion( key( "a" ) ) );
+
+        // A write of another key does not keep the load out.
+        cache.get( key( "b" ), k ->
+        {
+            cache.invalidate( key( "c" ) );
+            return load( k );
+        } );
+        assertNotNull( cache.getRegion( key( "b" ) ) );
+    }
+
+    @Test
+    public void getAllOnlyLoadsMissingKeys()
+        throws Exception
+    {
+        EntityCache<String> cache = newCache( 10 );
+        cache.get( key( "a" ), this::load );
+
+        List<List<Object>> asked = new ArrayList<>();
+        Map<List<Object>, String> beans = cache.getAll( Arrays.asList( key( "a" ), key( "b" ), key( "none" ) ), keys ->
+        {
+            asked.addAll( keys );
+            Map<List<Object>, String> found = new HashMap<>();
+            for ( List<Object> k : keys )
+            {
+                if ( !k.equals( key( "none" ) ) )
+                {
+                    found.put( k, load( k ) );
+                }
+            }
+            return found;
+        } );
+
+        assertEquals( Arrays.asList( key( "b" ), key( "none" ) ), asked );
+        assertEquals( "a", beans.get( key( "a" ) ) );
+        assertEquals( "b", beans.get( key( "b" ) ) );
+        assertFalse( beans.containsKey( key( "none" ) ) );
+        assertNotNull( cache.getRegion( key( "b" ) ) );
+        assertNull( cache.getRegion( key( "none" ) ) );
+    }
+
+    // ----------
+    // private
+    // ----------
+
+    private EntityCache<String> newCache( int maximumSize )
+    {
+        EntityCache<String> cache = new EntityCache<>( maximumSize );
+        cache.setClock( now::get );
+
+        return cache;
+    }
+
+    private static List<Object> key( String value )
+    {
+        return Collections.singletonList( value );
+    }
+
+    private String load( List<Object> key )
+    {
+        loads.merge( key, 1, Integer::sum );
+
+        return (String) key.get( 0 );
+    }
+
+    private String loadNothing( List<Object> key )
+    {
+        loads.merge( key, 1, Integer::sum );
+
+        return null;
+    }
+
+    private int loadCount( String value )
+    {
+        return loads.getOrDefault( key( value ), 0 );
+    }
+}